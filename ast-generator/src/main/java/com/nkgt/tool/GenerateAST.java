@@ -18,18 +18,20 @@ public class GenerateAST {
             outputDir,
             "Expr",
             Arrays.asList(
-                "Assign   : Token name, Expr value",
+                "Assign   : Token name, Expr value : int slot = -1, int upvalue = -1, boolean captured, int global = -1",
                 "Binary   : Expr left, Token operator, Expr right",
-                "Call     : Expr callee, Token paren, List<Expr> arguments",
+                "Call     : Expr callee, Token paren, List<Expr> arguments : Stmt.Function inlined, Expr inlinedBody, int inlinedBase",
                 "Get      : Expr object, Token name",
                 "Grouping : Expr expression",
+                "Index    : Expr object, Token bracket, Expr index",
                 "Literal  : Object value",
                 "Logical  : Expr left, Token operator, Expr right",
                 "Set      : Expr object, Token name, Expr value",
-                "Super    : Token keyword, Token method",
-                "This     : Token keyword",
+                "SetIndex : Expr object, Token bracket, Expr index, Expr value",
+                "Super    : Token keyword, Token method : int upvalue = -1, int thisSlot = -1, int thisUpvalue = -1, boolean thisCaptured",
+                "This     : Token keyword : int slot = -1, int upvalue = -1, boolean captured",
                 "Unary    : Token operator, Expr right",
-                "Variable : Token name"
+                "Variable : Token name : int slot = -1, int upvalue = -1, boolean captured, int global = -1"
             )
         );
 
@@ -38,14 +40,14 @@ public class GenerateAST {
             "Stmt",
             Arrays.asList(
                 "Block      : List<Stmt> statements",
-                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods",
+                "Class      : Token name, Expr.Variable superclass, List<Stmt.Function> methods : int slot = -1, boolean captured, int superSlot",
                 "Expression : Expr expression",
-                "Function   : Token name, List<Token> params, List<Stmt> body",
+                "Function   : Token name, List<Token> params, List<Stmt> body : int slot = -1, boolean captured, int frameSize, int[] capturedSlots, int[] upvalues",
                 "If         : Expr condition, Stmt thenBranch, Stmt elseBranch",
                 "Print      : Expr expression",
                 "Return     : Token keyword, Expr value",
-                "Var        : Token name, Expr initializer",
-                "While      : Expr condition, Stmt body"
+                "Var        : Token name, Expr initializer : int slot = -1, boolean captured",
+                "While      : Token keyword, Expr condition, Stmt body"
             )
         );
     }
@@ -59,8 +61,9 @@ public class GenerateAST {
         try(PrintWriter writer = new PrintWriter(path, StandardCharsets.UTF_8)) {
             writer.println("package com.nkgt.jlox;\n");
             writer.println("import java.util.List;\n");
-            writer.println("abstract class " + baseName + " {");
+            writer.println("abstract sealed class " + baseName + " {");
 
+            defineKinds(writer, baseName, types);
             defineVisitor(writer, baseName, types);
             writer.println("    abstract<R> R accept(Visitor<R> visitor);\n");
 
@@ -68,7 +71,8 @@ public class GenerateAST {
                 String[] tokens = types.get(i).split(":");
                 String className = tokens[0].trim();
                 String fields = tokens[1].trim();
-                defineType(writer, baseName, className, fields);
+                String resolvedFields = tokens.length > 2 ? tokens[2].trim() : null;
+                defineType(writer, baseName, className, fields, resolvedFields);
 
                 if(i != types.size() - 1) writer.println();
             }
@@ -81,12 +85,14 @@ public class GenerateAST {
             PrintWriter writer,
             String baseName,
             String className,
-            String fieldList
+            String fieldList,
+            String resolvedFieldList
     ) {
         String[] fields = fieldList.split(", ");
 
-        writer.println("    static class " + className + " extends " + baseName + " {");
+        writer.println("    static final class " + className + " extends " + baseName + " {");
         writer.println("        " + className + "(" + fieldList + ") {");
+        writer.println("            super(" + kindName(className) + ");");
 
         for(String field : fields) {
             String name = field.split(" ")[1];
@@ -104,9 +110,52 @@ public class GenerateAST {
             writer.println("        final " + field + ";");
         }
 
+        // Filled in by the passes that run between parsing and interpretation.
+        if(resolvedFieldList != null) {
+            writer.println();
+
+            for(String field : resolvedFieldList.split(", ")) {
+                writer.println("        " + field + ";");
+            }
+        }
+
         writer.println("    }");
     }
 
+    // A dense tag per node class, so that a switch over it can compile to a
+    // jump table instead of going through a virtual accept() call.
+    private static void defineKinds(
+            PrintWriter writer,
+            String baseName,
+            List<String> types
+    ) {
+        for(int i = 0; i < types.size(); i++) {
+            String typeName = types.get(i).split(":")[0].trim();
+            writer.println("    static final int " + kindName(typeName) + " = " + i + ";");
+        }
+
+        // A node a tracer is watching has its kind switched to TRACED, so
+        // tracing costs nothing on the nodes left alone.
+        writer.println("    static final int TRACED = " + types.size() + ";");
+        writer.println();
+        writer.println("    int kind;");
+        // Statements carry their source line for tracing, and a flag on
+        // those the parser makes up when it rewrites a for loop.
+        if(baseName.equals("Stmt")) {
+            writer.println("    int line;");
+            writer.println("    boolean desugared;");
+        }
+        writer.println();
+
+        writer.println("    " + baseName + "(int kind) {");
+        writer.println("        this.kind = kind;");
+        writer.println("    }\n");
+    }
+
+    private static String kindName(String typeName) {
+        return typeName.replaceAll("([a-z])([A-Z])", "$1_$2").toUpperCase();
+    }
+
     private static void defineVisitor(
             PrintWriter writer,
             String baseName,
@@ -0,0 +1,211 @@
+package com.nkgt.jlox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Evaluates the same expression tree twice over: once through accept() and
+// the Visitor interface, once with a switch over the node kind. Both
+// evaluators cover only the pure expression nodes, so what differs is the
+// dispatch and nothing else. setUp() checks that the parsed tree holds
+// nothing but those nodes, so the visitor's other methods are unreachable.
+//
+// Measured with a plain timing loop, 2M calls per round after three
+// warmup rounds, on a single-core JDK 17 machine:
+// visitor ~139-146 ns/op, kindSwitch ~112-113 ns/op.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class DispatchBenchmark {
+    private static final String SOURCE =
+            "print (1 + 2) * -3 - (8 / 2) + (4 < 5 == !false and 7 >= 6 and 7 or nil) " +
+            "- ((10 - 2) * (3 + 4) / -(2 - 9)) + (1 + 1 + 1 + 1 + 1 + 1 + 1 + 1);";
+
+    private Expr expr;
+    private final VisitorEvaluator visitor = new VisitorEvaluator();
+    private final SwitchEvaluator switcher = new SwitchEvaluator();
+
+    @Setup
+    public void setUp() {
+        Parser parser = new Parser(new Scanner(SOURCE).scanTokens());
+        expr = ((Stmt.Print) parser.parse().get(0)).expression;
+        checkPure(expr);
+    }
+
+    private static void checkPure(Expr expr) {
+        switch(expr.kind) {
+            case Expr.BINARY -> {
+                checkPure(((Expr.Binary) expr).left);
+                checkPure(((Expr.Binary) expr).right);
+            }
+            case Expr.LOGICAL -> {
+                checkPure(((Expr.Logical) expr).left);
+                checkPure(((Expr.Logical) expr).right);
+            }
+            case Expr.GROUPING -> checkPure(((Expr.Grouping) expr).expression);
+            case Expr.UNARY -> checkPure(((Expr.Unary) expr).right);
+            case Expr.LITERAL -> {}
+            default -> throw new IllegalStateException(
+                    "SOURCE may only use literals, grouping and operators, found kind " + expr.kind + "."
+            );
+        }
+    }
+
+    @Benchmark
+    public Object visitor() {
+        return visitor.evaluate(expr);
+    }
+
+    @Benchmark
+    public Object kindSwitch() {
+        return switcher.evaluate(expr);
+    }
+
+    private abstract static class Evaluator {
+        abstract Object evaluate(Expr expr);
+
+        Object binary(Expr.Binary expr) {
+            Object left = evaluate(expr.left);
+            Object right = evaluate(expr.right);
+
+            return switch(expr.operator.type) {
+                case PLUS -> (double) left + (double) right;
+                case MINUS -> (double) left - (double) right;
+                case STAR -> (double) left * (double) right;
+                case SLASH -> (double) left / (double) right;
+                case LESS -> (double) left < (double) right;
+                case GREATER_EQUAL -> (double) left >= (double) right;
+                case EQUAL_EQUAL -> left.equals(right);
+                default -> throw new IllegalStateException(expr.operator.lexeme);
+            };
+        }
+
+        Object logical(Expr.Logical expr) {
+            Object left = evaluate(expr.left);
+            boolean truthy = left != null && !Boolean.FALSE.equals(left);
+
+            if(expr.operator.type == TokenType.OR) {
+                if(truthy) return left;
+            } else if(!truthy) {
+                return left;
+            }
+
+            return evaluate(expr.right);
+        }
+
+        Object unary(Expr.Unary expr) {
+            Object right = evaluate(expr.right);
+
+            if(expr.operator.type == TokenType.MINUS) return -(double) right;
+            return right == null || Boolean.FALSE.equals(right);
+        }
+    }
+
+    private static class VisitorEvaluator extends Evaluator implements Expr.Visitor<Object> {
+        @Override
+        Object evaluate(Expr expr) {
+            return expr.accept(this);
+        }
+
+        @Override
+        public Object visitBinaryExpr(Expr.Binary expr) {
+            return binary(expr);
+        }
+
+        @Override
+        public Object visitGroupingExpr(Expr.Grouping expr) {
+            return evaluate(expr.expression);
+        }
+
+        @Override
+        public Object visitLiteralExpr(Expr.Literal expr) {
+            return expr.value;
+        }
+
+        @Override
+        public Object visitLogicalExpr(Expr.Logical expr) {
+            return logical(expr);
+        }
+
+        @Override
+        public Object visitUnaryExpr(Expr.Unary expr) {
+            return unary(expr);
+        }
+
+        // Nodes checkPure() rejects in setUp().
+        private static Object unreachable(Expr expr) {
+            throw new IllegalStateException("Not a pure expression node: " + expr.kind + ".");
+        }
+
+        @Override
+        public Object visitAssignExpr(Expr.Assign expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitCallExpr(Expr.Call expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitGetExpr(Expr.Get expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitIndexExpr(Expr.Index expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitSetExpr(Expr.Set expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitSetIndexExpr(Expr.SetIndex expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitSuperExpr(Expr.Super expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitThisExpr(Expr.This expr) {
+            return unreachable(expr);
+        }
+
+        @Override
+        public Object visitVariableExpr(Expr.Variable expr) {
+            return unreachable(expr);
+        }
+    }
+
+    private static class SwitchEvaluator extends Evaluator {
+        @Override
+        Object evaluate(Expr expr) {
+            return switch(expr.kind) {
+                case Expr.BINARY -> binary((Expr.Binary) expr);
+                case Expr.GROUPING -> evaluate(((Expr.Grouping) expr).expression);
+                case Expr.LITERAL -> ((Expr.Literal) expr).value;
+                case Expr.LOGICAL -> logical((Expr.Logical) expr);
+                case Expr.UNARY -> unary((Expr.Unary) expr);
+                default -> throw new IllegalStateException("Not a pure expression node: " + expr.kind + ".");
+            };
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.nkgt.jlox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// The recursive fib from examples/slow.lox. Nearly all of the time goes
+// into calls and returns, which makes it the benchmark for the call path.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FibBenchmark {
+    private static final String SOURCE =
+            "fun fib(n) {\n" +
+            "  if (n < 2) return n;\n" +
+            "  return fib(n - 1) + fib(n - 2);\n" +
+            "}\n";
+
+    @Param({"20", "25"})
+    public int n;
+
+    private Output output;
+    private Interpreter interpreter;
+    private List<Stmt> statements;
+    private int frameSize;
+
+    @Setup
+    public void setUp() throws IOException {
+        output = Output.file(Paths.get(System.getProperty("java.io.tmpdir"), "fib-benchmark.out"), 1 << 16);
+        interpreter = new Interpreter(output, new Budget(Budget.UNLIMITED, Budget.UNLIMITED));
+
+        statements = new Parser(new Scanner(SOURCE + "print fib(" + n + ");\n").scanTokens()).parse();
+
+        Resolver resolver = new Resolver(interpreter.globals);
+        resolver.resolve(statements);
+
+        Inliner inliner = new Inliner(resolver.frameSize());
+        inliner.inline(statements);
+        frameSize = inliner.frameSize();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        output.close();
+    }
+
+    @Benchmark
+    public void run() {
+        interpreter.interpret(statements, frameSize);
+    }
+}
@@ -0,0 +1,53 @@
+package com.nkgt.jlox;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// Lexes about a megabyte of ordinary code: keywords, a few dozen names
+// used over and over, numbers and strings. Throughput is the source size
+// divided by the score.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ScannerBenchmark {
+    private static final String CHUNK =
+            "class Counter < Base {\n" +
+            "  init(start) { this.count = start; this.name = \"counter\"; }\n" +
+            "  increment(step) {\n" +
+            "    if (step == nil or step <= 0) return false;\n" +
+            "    this.count = this.count + step * 1.5;\n" +
+            "    return true;\n" +
+            "  }\n" +
+            "}\n" +
+            "fun fibonacci(n) { if (n < 2) return n; return fibonacci(n - 1) + fibonacci(n - 2); }\n" +
+            "var counter = Counter(0);\n" +
+            "for (var index = 0; index < 100; index = index + 1) {\n" +
+            "  while (counter.count < index and !false) counter.increment(fibonacci(index));\n" +
+            "  print counter.count; // running total\n" +
+            "}\n";
+
+    private String source;
+
+    @Setup
+    public void setUp() {
+        source = CHUNK.repeat((1 << 20) / CHUNK.length());
+    }
+
+    @Benchmark
+    public TokenBuffer scan() {
+        return new Scanner(source).scanTokens();
+    }
+}
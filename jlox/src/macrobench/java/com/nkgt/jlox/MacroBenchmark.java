@@ -0,0 +1,215 @@
+package com.nkgt.jlox;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.Stream;
+
+// Runs each script of a corpus through the installed jlox launcher, JVM
+// startup included, the way a user would. Every script is run several
+// times; for each run it records the wall time, the time until the first
+// byte of output and the peak resident set size, and the results go to a
+// JSON file that can be compared across builds. An empty script is timed
+// the same way to give the cold start cost on its own.
+//
+// A script whose first line is a comment such as '// macrobench: runs=1'
+// is run that many times instead, so a long workload can stay in a corpus
+// without dominating it. Every script is run at least once.
+//
+// Usage: MacroBenchmark launcher corpus-dir runs results-file
+public class MacroBenchmark {
+    private static final long POLL_MILLIS = 5;
+    private static final String RUNS_DIRECTIVE = "// macrobench: runs=";
+
+    private record Run(int exitCode, double totalMillis, double firstOutputMillis, long peakRssKb) {}
+
+    private record Result(String name, List<Run> runs) {}
+
+    public static void main(String[] args) throws Exception {
+        if(args.length != 4) {
+            System.err.println("Usage: MacroBenchmark launcher corpus-dir runs results-file");
+            System.exit(64);
+        }
+
+        Path launcher = Paths.get(args[0]);
+        Path corpus = Paths.get(args[1]);
+        int runs = runCount(args[2], "The run count");
+        Path results = Paths.get(args[3]);
+
+        List<Path> scripts;
+        try(Stream<Path> files = Files.list(corpus)) {
+            scripts = files.filter(file -> file.toString().endsWith(".lox")).sorted().toList();
+        }
+
+        // Read up front, so a bad count fails before anything is timed.
+        int[] scriptRuns = new int[scripts.size()];
+        for(int i = 0; i < scriptRuns.length; i++) {
+            scriptRuns[i] = runs(scripts.get(i), runs);
+        }
+
+        Path empty = Files.createTempFile("jlox-empty", ".lox");
+        List<Result> measured = new ArrayList<>();
+
+        try {
+            measured.add(measure("(cold start)", launcher, empty, runs));
+            for(int i = 0; i < scriptRuns.length; i++) {
+                Path script = scripts.get(i);
+                measured.add(measure(script.getFileName().toString(), launcher, script, scriptRuns[i]));
+            }
+        } finally {
+            Files.delete(empty);
+        }
+
+        Files.createDirectories(results.toAbsolutePath().getParent());
+        write(results, launcher, runs, measured);
+        System.out.println("Results written to " + results);
+    }
+
+    private static int runs(Path script, int runs) throws IOException {
+        try(Stream<String> lines = Files.lines(script)) {
+            String first = lines.findFirst().orElse("").strip();
+            if(!first.startsWith(RUNS_DIRECTIVE)) return runs;
+
+            return runCount(first.substring(RUNS_DIRECTIVE.length()).strip(), "The run count of " + script);
+        }
+    }
+
+    private static int runCount(String text, String what) {
+        int runs = Integer.parseInt(text);
+        if(runs < 1) throw new IllegalArgumentException(what + " must be at least 1, not " + runs + ".");
+        return runs;
+    }
+
+    private static Result measure(String name, Path launcher, Path script, int runs) throws Exception {
+        List<Run> measured = new ArrayList<>();
+        for(int i = 0; i < runs; i++) {
+            measured.add(run(launcher, script));
+        }
+
+        Result result = new Result(name, measured);
+        System.out.printf(
+                Locale.ROOT,
+                "%-24s total %9.1f ms  first output %9.1f ms  peak RSS %8d KB%n",
+                name,
+                median(result, Run::totalMillis),
+                median(result, Run::firstOutputMillis),
+                (long) median(result, run -> run.peakRssKb())
+        );
+
+        return result;
+    }
+
+    private static Run run(Path launcher, Path script) throws Exception {
+        ProcessBuilder builder = new ProcessBuilder(launcher.toString(), script.toString());
+        builder.redirectError(ProcessBuilder.Redirect.DISCARD);
+
+        long start = System.nanoTime();
+        Process process = builder.start();
+
+        // Drains stdout so the script never blocks on a full pipe, noting
+        // when the first byte arrives.
+        long[] firstOutput = { -1 };
+        Thread reader = new Thread(() -> {
+            byte[] buffer = new byte[8192];
+            try(InputStream output = process.getInputStream()) {
+                int read = output.read(buffer);
+                if(read > 0) firstOutput[0] = System.nanoTime();
+                while(read >= 0) read = output.read(buffer);
+            } catch(IOException ignored) {}
+        });
+        reader.start();
+
+        // VmHWM is the kernel's own high-water mark, so polling only has to
+        // catch the process before it exits.
+        Path status = Paths.get("/proc", Long.toString(process.pid()), "status");
+        long peakRss = -1;
+        while(process.isAlive()) {
+            peakRss = Math.max(peakRss, highWaterMark(status));
+            Thread.sleep(POLL_MILLIS);
+        }
+
+        int exitCode = process.waitFor();
+        long end = System.nanoTime();
+        reader.join();
+
+        double firstOutputMillis = firstOutput[0] < 0 ? -1 : (firstOutput[0] - start) / 1e6;
+        return new Run(exitCode, (end - start) / 1e6, firstOutputMillis, peakRss);
+    }
+
+    // Peak resident set in KB, or -1 where /proc isn't available.
+    private static long highWaterMark(Path status) {
+        try {
+            for(String line : Files.readAllLines(status)) {
+                if(line.startsWith("VmHWM:")) {
+                    return Long.parseLong(line.substring(6).trim().split("\\s+")[0]);
+                }
+            }
+        } catch(IOException | RuntimeException ignored) {}
+
+        return -1;
+    }
+
+    private interface Metric {
+        double of(Run run);
+    }
+
+    private static double median(Result result, Metric metric) {
+        double[] values = values(result, metric);
+        int middle = values.length / 2;
+        return values.length % 2 == 1 ? values[middle] : (values[middle - 1] + values[middle]) / 2;
+    }
+
+    private static double[] values(Result result, Metric metric) {
+        double[] values = result.runs().stream().mapToDouble(metric::of).toArray();
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static void write(Path path, Path launcher, int runs, List<Result> results) throws IOException {
+        try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8))) {
+            writer.println("{");
+            writer.println("  \"launcher\": " + quote(launcher.toAbsolutePath().toString()) + ",");
+            writer.println("  \"java\": " + quote(System.getProperty("java.version")) + ",");
+            writer.println("  \"runs\": " + runs + ",");
+            writer.println("  \"scripts\": [");
+
+            for(int i = 0; i < results.size(); i++) {
+                Result result = results.get(i);
+                writer.println("    {");
+                writer.println("      \"name\": " + quote(result.name()) + ",");
+                writer.println("      \"exitCodes\": " + result.runs().stream().map(run -> Integer.toString(run.exitCode())).toList() + ",");
+                writer.println("      \"totalMillis\": " + summary(result, Run::totalMillis) + ",");
+                writer.println("      \"firstOutputMillis\": " + summary(result, Run::firstOutputMillis) + ",");
+                writer.println("      \"peakRssKb\": " + summary(result, run -> run.peakRssKb()));
+                writer.println(i == results.size() - 1 ? "    }" : "    },");
+            }
+
+            writer.println("  ]");
+            writer.println("}");
+        }
+    }
+
+    private static String summary(Result result, Metric metric) {
+        double[] values = values(result, metric);
+        return String.format(
+                Locale.ROOT,
+                "{\"min\": %.3f, \"median\": %.3f, \"max\": %.3f, \"runs\": %s}",
+                values[0],
+                median(result, metric),
+                values[values.length - 1],
+                Arrays.toString(result.runs().stream().mapToDouble(metric::of).toArray())
+        );
+    }
+
+    private static String quote(String text) {
+        return "\"" + text.replace("\\", "\\\\").replace("\"", "\\\"") + "\"";
+    }
+}
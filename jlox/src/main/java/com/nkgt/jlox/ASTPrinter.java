@@ -7,6 +7,10 @@ class ASTPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return stmt.accept(this);
     }
 
+    String print(Expr expr) {
+        return expr.accept(this);
+    }
+
     @Override
     public String visitClassStmt(Stmt.Class stmt) {
         StringBuilder builder = new StringBuilder();
@@ -42,6 +46,11 @@ class ASTPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return "this";
     }
 
+    @Override
+    public String visitSuperExpr(Expr.Super expr) {
+        return "super." + expr.method.lexeme;
+    }
+
     @Override
     public String visitGetExpr(Expr.Get expr) {
         return "(Get " + expr.object.accept(this) + "." + expr.name.lexeme + ")";
@@ -52,6 +61,16 @@ class ASTPrinter implements Expr.Visitor<String>, Stmt.Visitor<String> {
         return "(Set " + expr.object.accept(this) + "." + expr.name.lexeme + " " + expr.value.accept(this) + ")";
     }
 
+    @Override
+    public String visitIndexExpr(Expr.Index expr) {
+        return parenthesize("Index", expr.object, expr.index);
+    }
+
+    @Override
+    public String visitSetIndexExpr(Expr.SetIndex expr) {
+        return parenthesize("SetIndex", expr.object, expr.index, expr.value);
+    }
+
     @Override
     public String visitBinaryExpr(Expr.Binary expr) {
         return parenthesize(expr.operator.lexeme, expr.left, expr.right);
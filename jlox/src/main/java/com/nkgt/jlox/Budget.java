@@ -0,0 +1,91 @@
+package com.nkgt.jlox;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// How many steps, loop iterations and calls, a script may take and how
+// many bytes it may allocate before it is stopped, and a flag to stop it
+// early from another thread. Interpreters take both a slice at a time, so a
+// cancellation is noticed within one slice and the interpreters of parallel
+// tasks share a single budget.
+final class Budget {
+    static final long UNLIMITED = Long.MAX_VALUE;
+
+    // Rough sizes of what a script can build up. Short-lived values, such
+    // as frames and boxed numbers, are not counted. Allocations are only
+    // ever added up: memory the garbage collector reclaims is not given
+    // back to the script.
+    static final long INSTANCE_BYTES = 80;
+    static final long FIELD_BYTES = 40;
+    static final long CLASS_BYTES = 96;
+    static final long CLOSURE_BYTES = 32;
+    static final long UPVALUE_BYTES = 8;
+    static final long ROPE_BYTES = 32;
+    static final long ARRAY_BYTES = 32;
+    static final long ELEMENT_BYTES = 8;
+    static final long MAP_BYTES = 48;
+    static final long ENTRY_BYTES = 24;
+
+    private static final int SLICE = 1 << 12;
+    private static final long MEMORY_SLICE = 1 << 16;
+    private static final long SLICES_LEFT = 16;
+
+    private final AtomicLong remaining;
+    private final AtomicLong memory;
+    private volatile boolean cancelled = false;
+
+    Budget(long steps, long bytes) {
+        this.remaining = new AtomicLong(steps);
+        this.memory = new AtomicLong(bytes);
+    }
+
+    static long stringBytes(int length) {
+        return 24 + 2L * length;
+    }
+
+    // Saturates rather than wrapping, so a huge count is over any quota
+    // instead of turning into a negative charge.
+    static long elementBytes(long count) {
+        try {
+            return Math.multiplyExact(ELEMENT_BYTES, count);
+        } catch(ArithmeticException overflow) {
+            return UNLIMITED;
+        }
+    }
+
+    void cancel() {
+        cancelled = true;
+    }
+
+    int take(Token token) {
+        if(cancelled) throw new RuntimeError(token, "Script was cancelled.");
+
+        for(;;) {
+            long left = remaining.get();
+            if(left <= 0) throw new RuntimeError(token, "Script ran out of fuel.");
+
+            int slice = (int) Math.min(SLICE, left);
+            if(remaining.compareAndSet(left, left - slice)) return slice;
+        }
+    }
+
+    // A slice of at least the given number of bytes, or 0 once the quota
+    // can't cover it. Slices are kept to a small part of what is left, so
+    // interpreters running side by side don't strand the quota between
+    // them.
+    long reserve(long bytes) {
+        for(;;) {
+            long left = memory.get();
+            if(left < bytes) return 0;
+
+            long slice = Math.max(Math.min(MEMORY_SLICE, left / SLICES_LEFT), bytes);
+            if(memory.compareAndSet(left, left - slice)) return slice;
+        }
+    }
+
+    // What an interpreter took in slices but didn't use, handed back when
+    // it is done so the next one can have it.
+    void giveBack(long steps, long bytes) {
+        if(steps > 0) remaining.addAndGet(steps);
+        if(bytes > 0) memory.addAndGet(bytes);
+    }
+}
@@ -0,0 +1,34 @@
+package com.nkgt.jlox;
+
+import java.io.IOException;
+import java.nio.file.Paths;
+
+final class BufferNatives {
+    private BufferNatives() {}
+
+    @Native("Buffer")
+    static LoxBuffer newBuffer(Interpreter interpreter, double length) {
+        if(!(length >= 0 && length <= LoxBuffer.MAX_LENGTH) || length != Math.floor(length)) {
+            throw new NativeError(
+                    "Buffer length must be an integer between 0 and " + LoxBuffer.MAX_LENGTH + "."
+            );
+        }
+
+        interpreter.allocate(Budget.elementBytes((long) length));
+
+        try {
+            return LoxBuffer.allocate((long) length);
+        } catch(OutOfMemoryError error) {
+            throw new NativeError("Not enough memory for a buffer of " + (long) length + " numbers.");
+        }
+    }
+
+    @Native
+    static LoxBuffer mapBuffer(String path) {
+        try {
+            return LoxBuffer.map(Paths.get(path));
+        } catch(IOException error) {
+            throw new NativeError("Could not map '" + path + "'.");
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.nkgt.jlox;
+
+// Holds a local that a closure captures. Locals that are assigned after
+// being captured live in a Cell shared by the frame and every closure;
+// the rest are copied into a Cell of the closure's own when it is made.
+//
+// Tasks started by spawn() share the Cells their function captured. Like a
+// global, a Cell's value is read and written atomically and every task sees
+// the latest write, but a read followed by a write is not atomic.
+class Cell {
+    volatile Object value;
+
+    // The parallel worker that made the Cell, the only interpreter of a
+    // parallel task allowed to assign it; null when made anywhere else.
+    final Interpreter owner;
+
+    Cell(Object value, Interpreter owner) {
+        this.value = value;
+        this.owner = owner;
+    }
+}
@@ -0,0 +1,70 @@
+package com.nkgt.jlox;
+
+final class CollectionNatives {
+    private CollectionNatives() {}
+
+    @Native("Array")
+    static LoxArray newArray(Interpreter interpreter, double length) {
+        if(!(length >= 0 && length <= LoxArray.MAX_LENGTH) || length != Math.floor(length)) {
+            throw new NativeError(
+                    "Array length must be an integer between 0 and " + LoxArray.MAX_LENGTH + "."
+            );
+        }
+
+        interpreter.allocate(Budget.ARRAY_BYTES + Budget.elementBytes((long) length));
+
+        try {
+            return new LoxArray((int) length);
+        } catch(OutOfMemoryError error) {
+            throw new NativeError("Not enough memory for an array of " + (long) length + " elements.");
+        }
+    }
+
+    @Native("Map")
+    static LoxMap newMap(Interpreter interpreter) {
+        interpreter.allocate(Budget.MAP_BYTES);
+        return new LoxMap();
+    }
+
+    @Native
+    static double len(Object value) {
+        if(value instanceof CharSequence text) return text.length();
+        if(value instanceof LoxArray array) return array.length();
+        if(value instanceof LoxMap map) return map.size();
+        if(value instanceof LoxBuffer buffer) return buffer.length();
+        throw new NativeError("Argument must be a string, array, map or buffer.");
+    }
+
+    @Native
+    static void push(Interpreter interpreter, LoxArray array, Object value) {
+        interpreter.allocate(Budget.ELEMENT_BYTES);
+
+        try {
+            array.push(value);
+        } catch(OutOfMemoryError error) {
+            throw new NativeError("Not enough memory to grow the array.");
+        }
+    }
+
+    @Native
+    static Object pop(LoxArray array) {
+        if(array.length() == 0) throw new NativeError("Can't pop from an empty array.");
+        return array.pop();
+    }
+
+    @Native
+    static LoxArray keys(Interpreter interpreter, LoxMap map) {
+        interpreter.allocate(Budget.ARRAY_BYTES + Budget.ELEMENT_BYTES * map.size());
+        return map.keys();
+    }
+
+    @Native
+    static boolean has(LoxMap map, Object key) {
+        return map.containsKey(key);
+    }
+
+    @Native
+    static Object remove(LoxMap map, Object key) {
+        return map.remove(key);
+    }
+}
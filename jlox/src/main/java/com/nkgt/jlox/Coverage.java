@@ -0,0 +1,106 @@
+package com.nkgt.jlox;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+// The tracer behind --coverage. Counts how often each source line runs in
+// a plain array indexed by line, cheap enough to leave on for a whole
+// workload, then writes the source annotated with the counts and an LCOV
+// tracefile. A line counts once for each statement on it that runs, and a
+// loop once for each test of its condition; blocks only group statements
+// and aren't counted. Tasks count without synchronisation, so a line run
+// by several at once may come out a little low.
+class Coverage implements Tracer {
+    private static final int HOTTEST = 10;
+
+    private long[] counts;
+    private boolean[] executable;
+
+    Coverage(String source) {
+        int lines = (int) source.lines().count();
+        this.counts = new long[lines + 1];
+        this.executable = new boolean[lines + 1];
+    }
+
+    @Override
+    public void loaded(Stmt stmt) {
+        if(stmt instanceof Stmt.Block) return;
+
+        if(stmt.line >= counts.length) {
+            counts = Arrays.copyOf(counts, stmt.line + 1);
+            executable = Arrays.copyOf(executable, stmt.line + 1);
+        }
+
+        executable[stmt.line] = true;
+    }
+
+    @Override
+    public void statement(Stmt stmt) {
+        if(stmt instanceof Stmt.Block) return;
+        counts[stmt.line]++;
+    }
+
+    // Each line prefixed with its count, '#####' for lines that never ran
+    // and '-' for lines without statements, after a list of the hottest.
+    void writeReport(String source, Path path) throws IOException {
+        String[] lines = source.lines().toArray(String[]::new);
+
+        try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, Charset.defaultCharset()))) {
+            writer.println("Hottest lines:");
+
+            Integer[] order = new Integer[counts.length];
+            for(int i = 0; i < order.length; i++) order[i] = i;
+            Arrays.sort(order, (a, b) -> Long.compare(counts[b], counts[a]));
+
+            for(int i = 0; i < Math.min(HOTTEST, order.length) && counts[order[i]] > 0; i++) {
+                int line = order[i];
+                writer.printf("%12d  line %d: %s%n", counts[line], line, text(lines, line).strip());
+            }
+
+            writer.println();
+
+            for(int line = 1; line <= lines.length; line++) {
+                String count;
+                if(line >= counts.length || !executable[line]) {
+                    count = "-";
+                } else if(counts[line] == 0) {
+                    count = "#####";
+                } else {
+                    count = Long.toString(counts[line]);
+                }
+
+                writer.printf("%12s:%6d: %s%n", count, line, lines[line - 1]);
+            }
+        }
+    }
+
+    void writeLcov(Path script, Path path) throws IOException {
+        try(PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path, Charset.defaultCharset()))) {
+            int found = 0;
+            int hit = 0;
+
+            writer.println("TN:");
+            writer.println("SF:" + script.toAbsolutePath());
+
+            for(int line = 1; line < counts.length; line++) {
+                if(!executable[line]) continue;
+
+                writer.println("DA:" + line + "," + counts[line]);
+                found++;
+                if(counts[line] > 0) hit++;
+            }
+
+            writer.println("LF:" + found);
+            writer.println("LH:" + hit);
+            writer.println("end_of_record");
+        }
+    }
+
+    private static String text(String[] lines, int line) {
+        return line >= 1 && line <= lines.length ? lines[line - 1] : "";
+    }
+}
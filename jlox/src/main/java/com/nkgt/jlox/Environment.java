@@ -1,58 +1,56 @@
 package com.nkgt.jlox;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
-
+import java.util.concurrent.ConcurrentHashMap;
+
+// The globals, shared by the main script and every task it starts. Each
+// read and write is atomic and seen by all tasks; a read followed by a
+// write, as in 'count = count + 1', is not. Captured locals shared by
+// tasks behave the same way; see Cell.
+//
+// The Resolver gives every global name an index the first time it sees
+// it, so the interpreter reaches a global through an array rather than a
+// map. A name can be used before anything defines it; its entry stays
+// undefined until then.
 public class Environment {
-    final Environment enclosing;
-    private final Map<String, Object> values = new HashMap<>();
+    // Marks an entry whose name has been used but not yet defined.
+    private static final Object UNDEFINED = new Object();
 
-    Environment() {
-        enclosing = null;
+    private static final class Global {
+        volatile Object value = UNDEFINED;
     }
 
-    Environment(Environment enclosing) {
-        this.enclosing = enclosing;
-    }
+    private final Map<String, Integer> indices = new ConcurrentHashMap<>();
 
-    void define(String name, Object value) {
-        values.put(name, value);
-    }
+    // Entries never move, so a write can't be lost when the array grows.
+    private volatile Global[] globals = new Global[64];
+    private int count = 0;
 
-    Environment ancestor(int distance) {
-        Environment environment = this;
+    int index(String name) {
+        Integer index = indices.get(name);
+        if(index != null) return index;
 
-        for(int i = 0; i < distance; i++) {
-            environment = environment.enclosing;
-        }
-
-        return environment;
+        return add(name);
     }
 
-    void assign(Token name, Object value) {
-        if(values.containsKey(name.lexeme)) {
-            values.put(name.lexeme, value);
-            return;
-        }
+    void define(String name, Object value) {
+        globals[index(name)].value = value;
+    }
 
-        if(enclosing != null) {
-            enclosing.assign(name, value);
+    void assign(int index, Token name, Object value) {
+        Global global = globals[index];
+        if(global.value != UNDEFINED) {
+            global.value = value;
             return;
         }
 
         throw new RuntimeError(name, "Undefined variable '" + name.lexeme + "'.");
     }
 
-    void assignAt(int distance, Token name, Object value) {
-        ancestor(distance).values.put(name.lexeme, value);
-    }
-
-    Object get(Token name) {
-        if(values.containsKey(name.lexeme)) {
-            return values.get(name.lexeme);
-        }
-
-        if(enclosing != null) return enclosing.get(name);
+    Object get(int index, Token name) {
+        Object value = globals[index].value;
+        if(value != UNDEFINED) return value;
 
         throw new RuntimeError(
             name,
@@ -60,7 +58,18 @@ public class Environment {
         );
     }
 
-    Object getAt(int distance, String name) {
-        return ancestor(distance).values.get(name);
+    private synchronized int add(String name) {
+        Integer existing = indices.get(name);
+        if(existing != null) return existing;
+
+        Global[] entries = globals;
+        if(count == entries.length) {
+            entries = Arrays.copyOf(entries, count * 2);
+        }
+
+        entries[count] = new Global();
+        globals = entries;
+        indices.put(name, count);
+        return count++;
     }
 }
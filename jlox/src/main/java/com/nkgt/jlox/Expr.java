@@ -2,16 +2,40 @@ package com.nkgt.jlox;
 
 import java.util.List;
 
-abstract class Expr {
+abstract sealed class Expr {
+    static final int ASSIGN = 0;
+    static final int BINARY = 1;
+    static final int CALL = 2;
+    static final int GET = 3;
+    static final int GROUPING = 4;
+    static final int INDEX = 5;
+    static final int LITERAL = 6;
+    static final int LOGICAL = 7;
+    static final int SET = 8;
+    static final int SET_INDEX = 9;
+    static final int SUPER = 10;
+    static final int THIS = 11;
+    static final int UNARY = 12;
+    static final int VARIABLE = 13;
+    static final int TRACED = 14;
+
+    int kind;
+
+    Expr(int kind) {
+        this.kind = kind;
+    }
+
     interface Visitor<R> {
         R visitAssignExpr(Assign expr);
         R visitBinaryExpr(Binary expr);
         R visitCallExpr(Call expr);
         R visitGetExpr(Get expr);
         R visitGroupingExpr(Grouping expr);
+        R visitIndexExpr(Index expr);
         R visitLiteralExpr(Literal expr);
         R visitLogicalExpr(Logical expr);
         R visitSetExpr(Set expr);
+        R visitSetIndexExpr(SetIndex expr);
         R visitSuperExpr(Super expr);
         R visitThisExpr(This expr);
         R visitUnaryExpr(Unary expr);
@@ -20,8 +44,9 @@ abstract class Expr {
 
     abstract<R> R accept(Visitor<R> visitor);
 
-    static class Assign extends Expr {
+    static final class Assign extends Expr {
         Assign(Token name, Expr value) {
+            super(ASSIGN);
             this.name = name;
             this.value = value;
         }
@@ -33,10 +58,16 @@ abstract class Expr {
 
         final Token name;
         final Expr value;
+
+        int slot = -1;
+        int upvalue = -1;
+        boolean captured;
+        int global = -1;
     }
 
-    static class Binary extends Expr {
+    static final class Binary extends Expr {
         Binary(Expr left, Token operator, Expr right) {
+            super(BINARY);
             this.left = left;
             this.operator = operator;
             this.right = right;
@@ -52,8 +83,9 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Call extends Expr {
+    static final class Call extends Expr {
         Call(Expr callee, Token paren, List<Expr> arguments) {
+            super(CALL);
             this.callee = callee;
             this.paren = paren;
             this.arguments = arguments;
@@ -67,10 +99,15 @@ abstract class Expr {
         final Expr callee;
         final Token paren;
         final List<Expr> arguments;
+
+        Stmt.Function inlined;
+        Expr inlinedBody;
+        int inlinedBase;
     }
 
-    static class Get extends Expr {
+    static final class Get extends Expr {
         Get(Expr object, Token name) {
+            super(GET);
             this.object = object;
             this.name = name;
         }
@@ -84,8 +121,9 @@ abstract class Expr {
         final Token name;
     }
 
-    static class Grouping extends Expr {
+    static final class Grouping extends Expr {
         Grouping(Expr expression) {
+            super(GROUPING);
             this.expression = expression;
         }
 
@@ -97,8 +135,27 @@ abstract class Expr {
         final Expr expression;
     }
 
-    static class Literal extends Expr {
+    static final class Index extends Expr {
+        Index(Expr object, Token bracket, Expr index) {
+            super(INDEX);
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitIndexExpr(this);
+        }
+
+        final Expr object;
+        final Token bracket;
+        final Expr index;
+    }
+
+    static final class Literal extends Expr {
         Literal(Object value) {
+            super(LITERAL);
             this.value = value;
         }
 
@@ -110,8 +167,9 @@ abstract class Expr {
         final Object value;
     }
 
-    static class Logical extends Expr {
+    static final class Logical extends Expr {
         Logical(Expr left, Token operator, Expr right) {
+            super(LOGICAL);
             this.left = left;
             this.operator = operator;
             this.right = right;
@@ -127,8 +185,9 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Set extends Expr {
+    static final class Set extends Expr {
         Set(Expr object, Token name, Expr value) {
+            super(SET);
             this.object = object;
             this.name = name;
             this.value = value;
@@ -144,8 +203,29 @@ abstract class Expr {
         final Expr value;
     }
 
-    static class Super extends Expr {
+    static final class SetIndex extends Expr {
+        SetIndex(Expr object, Token bracket, Expr index, Expr value) {
+            super(SET_INDEX);
+            this.object = object;
+            this.bracket = bracket;
+            this.index = index;
+            this.value = value;
+        }
+
+        @Override
+        <R> R accept(Visitor<R> visitor) {
+            return visitor.visitSetIndexExpr(this);
+        }
+
+        final Expr object;
+        final Token bracket;
+        final Expr index;
+        final Expr value;
+    }
+
+    static final class Super extends Expr {
         Super(Token keyword, Token method) {
+            super(SUPER);
             this.keyword = keyword;
             this.method = method;
         }
@@ -157,10 +237,16 @@ abstract class Expr {
 
         final Token keyword;
         final Token method;
+
+        int upvalue = -1;
+        int thisSlot = -1;
+        int thisUpvalue = -1;
+        boolean thisCaptured;
     }
 
-    static class This extends Expr {
+    static final class This extends Expr {
         This(Token keyword) {
+            super(THIS);
             this.keyword = keyword;
         }
 
@@ -170,10 +256,15 @@ abstract class Expr {
         }
 
         final Token keyword;
+
+        int slot = -1;
+        int upvalue = -1;
+        boolean captured;
     }
 
-    static class Unary extends Expr {
+    static final class Unary extends Expr {
         Unary(Token operator, Expr right) {
+            super(UNARY);
             this.operator = operator;
             this.right = right;
         }
@@ -187,8 +278,9 @@ abstract class Expr {
         final Expr right;
     }
 
-    static class Variable extends Expr {
+    static final class Variable extends Expr {
         Variable(Token name) {
+            super(VARIABLE);
             this.name = name;
         }
 
@@ -198,5 +290,10 @@ abstract class Expr {
         }
 
         final Token name;
+
+        int slot = -1;
+        int upvalue = -1;
+        boolean captured;
+        int global = -1;
     }
 }
@@ -0,0 +1,28 @@
+package com.nkgt.jlox;
+
+import java.util.Arrays;
+
+// The slots of one call. Closures capture Cells rather than the frame, so
+// nothing refers to a frame once its call returns, and the interpreter
+// hands it to the next call instead of dropping it.
+class Frame {
+    Object[] slots;
+    Cell[] upvalues;
+
+    Frame(int size, Cell[] upvalues) {
+        this.slots = new Object[size];
+        this.upvalues = upvalues;
+    }
+
+    void reuse(int size, Cell[] upvalues) {
+        if(slots.length < size) slots = new Object[size];
+        this.upvalues = upvalues;
+    }
+
+    // Drops what the call left behind, so a frame waiting to be reused
+    // doesn't keep it alive.
+    void clear() {
+        Arrays.fill(slots, null);
+        upvalues = null;
+    }
+}
@@ -0,0 +1,30 @@
+package com.nkgt.jlox;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+final class IONatives {
+    private IONatives() {}
+
+    @Native
+    static String readFile(Interpreter interpreter, String path) {
+        try {
+            String text = Files.readString(Paths.get(path), Charset.defaultCharset());
+            interpreter.allocate(Budget.stringBytes(text.length()));
+            return text;
+        } catch(IOException error) {
+            throw new NativeError("Could not read '" + path + "'.");
+        }
+    }
+
+    @Native
+    static void writeFile(String path, String text) {
+        try {
+            Files.writeString(Paths.get(path), text, Charset.defaultCharset());
+        } catch(IOException error) {
+            throw new NativeError("Could not write '" + path + "'.");
+        }
+    }
+}
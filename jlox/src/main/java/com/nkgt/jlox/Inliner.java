@@ -0,0 +1,432 @@
+package com.nkgt.jlox;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Replaces calls to small, non-recursive functions with a copy of the
+// function's return expression, evaluated in the caller's frame with the
+// arguments stored in spare slots. The call keeps its callee so that the
+// interpreter can check the name still refers to the inlined function and
+// fall back to a normal call when it doesn't.
+class Inliner implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private static final int MAX_NODES = 16;
+
+    private final Map<String, Stmt.Function> functions = new HashMap<>();
+    private final Set<String> rebound = new HashSet<>();
+    private boolean collecting = true;
+
+    // Frame of the function being walked: the slots the Resolver gave it,
+    // the spare slots taken by the inlined calls around the current
+    // expression, and the resulting size.
+    private int locals;
+    private int temporaries = 0;
+    private int frameSize;
+
+    Inliner(int frameSize) {
+        this.locals = frameSize;
+        this.frameSize = frameSize;
+    }
+
+    void inline(List<Stmt> statements) {
+        walk(statements);
+        collecting = false;
+        walk(statements);
+    }
+
+    int frameSize() {
+        return frameSize;
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        walk(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        if(collecting) rebound.add(stmt.name.lexeme);
+        if(stmt.superclass != null) walk(stmt.superclass);
+
+        for(Stmt.Function method : stmt.methods) {
+            walkFunction(method);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        walk(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        if(collecting && functions.put(stmt.name.lexeme, stmt) != null) {
+            rebound.add(stmt.name.lexeme);
+        }
+
+        walkFunction(stmt);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        walk(stmt.condition);
+        walk(stmt.thenBranch);
+        if(stmt.elseBranch != null) walk(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        walk(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        if(stmt.value != null) walk(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        if(collecting) rebound.add(stmt.name.lexeme);
+        if(stmt.initializer != null) walk(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        walk(stmt.condition);
+        walk(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        if(collecting) rebound.add(expr.name.lexeme);
+        walk(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        walk(expr.left);
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        walk(expr.callee);
+
+        Stmt.Function function = collecting ? null : candidate(expr);
+        Expr body = function == null
+                ? null
+                : new Copy(function, locals + temporaries).copy(returnValue(function));
+
+        if(body == null) {
+            for(Expr argument : expr.arguments) {
+                walk(argument);
+            }
+
+            return null;
+        }
+
+        expr.inlined = function;
+        expr.inlinedBody = body;
+        expr.inlinedBase = locals + temporaries;
+
+        // Calls inlined into the arguments must not reuse the slots the
+        // earlier arguments have already been stored in.
+        temporaries += function.params.size();
+        frameSize = Math.max(frameSize, locals + temporaries);
+
+        for(Expr argument : expr.arguments) {
+            walk(argument);
+        }
+
+        temporaries -= function.params.size();
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        walk(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        walk(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        walk(expr.object);
+        walk(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        walk(expr.left);
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        walk(expr.object);
+        walk(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        walk(expr.object);
+        walk(expr.index);
+        walk(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        return null;
+    }
+
+    private void walk(List<Stmt> statements) {
+        for(Stmt statement : statements) {
+            walk(statement);
+        }
+    }
+
+    private void walk(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void walk(Expr expr) {
+        expr.accept(this);
+    }
+
+    private void walkFunction(Stmt.Function function) {
+        if(collecting) {
+            for(Token param : function.params) {
+                rebound.add(param.lexeme);
+            }
+        }
+
+        int enclosingLocals = locals;
+        int enclosingTemporaries = temporaries;
+        int enclosingFrameSize = frameSize;
+
+        locals = function.frameSize;
+        temporaries = 0;
+        frameSize = function.frameSize;
+
+        walk(function.body);
+        function.frameSize = frameSize;
+
+        locals = enclosingLocals;
+        temporaries = enclosingTemporaries;
+        frameSize = enclosingFrameSize;
+    }
+
+    // Only a function declared once under its name, never assigned or
+    // shadowed, is worth inlining; the runtime check keeps anything else
+    // correct.
+    private Stmt.Function candidate(Expr.Call expr) {
+        if(!(expr.callee instanceof Expr.Variable callee)) return null;
+        if(rebound.contains(callee.name.lexeme)) return null;
+
+        Stmt.Function function = functions.get(callee.name.lexeme);
+        if(function == null) return null;
+        if(function.params.size() != expr.arguments.size()) return null;
+        if(function.upvalues.length != 0) return null;
+        if(returnValue(function) == null) return null;
+
+        return function;
+    }
+
+    private static Expr returnValue(Stmt.Function function) {
+        if(function.body.size() != 1) return null;
+        if(!(function.body.get(0) instanceof Stmt.Return stmt)) return null;
+        return stmt.value;
+    }
+
+    // Copies a function's return expression with its parameters moved to the
+    // caller's spare slots. Yields null for anything that can't run in the
+    // caller's frame or is too large to be worth it.
+    private static class Copy implements Expr.Visitor<Expr> {
+        private final Stmt.Function function;
+        private final int base;
+        private int nodes = 0;
+
+        Copy(Stmt.Function function, int base) {
+            this.function = function;
+            this.base = base;
+        }
+
+        Expr copy(Expr expr) {
+            if(expr == null || ++nodes > MAX_NODES) return null;
+            return expr.accept(this);
+        }
+
+        @Override
+        public Expr visitAssignExpr(Expr.Assign expr) {
+            if(expr.upvalue >= 0 || expr.captured) return null;
+
+            Expr value = copy(expr.value);
+            if(value == null) return null;
+
+            Expr.Assign copy = new Expr.Assign(expr.name, value);
+            if(expr.slot >= 0) copy.slot = base + expr.slot;
+            copy.global = expr.global;
+            return copy;
+        }
+
+        @Override
+        public Expr visitBinaryExpr(Expr.Binary expr) {
+            Expr left = copy(expr.left);
+            Expr right = copy(expr.right);
+            if(left == null || right == null) return null;
+
+            return new Expr.Binary(left, expr.operator, right);
+        }
+
+        @Override
+        public Expr visitCallExpr(Expr.Call expr) {
+            if(expr.callee instanceof Expr.Variable callee &&
+               callee.name.lexeme.equals(function.name.lexeme)) {
+                return null;
+            }
+
+            Expr callee = copy(expr.callee);
+            if(callee == null) return null;
+
+            List<Expr> arguments = new ArrayList<>();
+            for(Expr argument : expr.arguments) {
+                Expr copy = copy(argument);
+                if(copy == null) return null;
+                arguments.add(copy);
+            }
+
+            return new Expr.Call(callee, expr.paren, arguments);
+        }
+
+        @Override
+        public Expr visitGetExpr(Expr.Get expr) {
+            Expr object = copy(expr.object);
+            if(object == null) return null;
+
+            return new Expr.Get(object, expr.name);
+        }
+
+        @Override
+        public Expr visitGroupingExpr(Expr.Grouping expr) {
+            Expr expression = copy(expr.expression);
+            if(expression == null) return null;
+
+            return new Expr.Grouping(expression);
+        }
+
+        @Override
+        public Expr visitIndexExpr(Expr.Index expr) {
+            Expr object = copy(expr.object);
+            Expr index = copy(expr.index);
+            if(object == null || index == null) return null;
+
+            return new Expr.Index(object, expr.bracket, index);
+        }
+
+        @Override
+        public Expr visitLiteralExpr(Expr.Literal expr) {
+            return expr;
+        }
+
+        @Override
+        public Expr visitLogicalExpr(Expr.Logical expr) {
+            Expr left = copy(expr.left);
+            Expr right = copy(expr.right);
+            if(left == null || right == null) return null;
+
+            return new Expr.Logical(left, expr.operator, right);
+        }
+
+        @Override
+        public Expr visitSetExpr(Expr.Set expr) {
+            Expr object = copy(expr.object);
+            Expr value = copy(expr.value);
+            if(object == null || value == null) return null;
+
+            return new Expr.Set(object, expr.name, value);
+        }
+
+        @Override
+        public Expr visitSetIndexExpr(Expr.SetIndex expr) {
+            Expr object = copy(expr.object);
+            Expr index = copy(expr.index);
+            Expr value = copy(expr.value);
+            if(object == null || index == null || value == null) return null;
+
+            return new Expr.SetIndex(object, expr.bracket, index, value);
+        }
+
+        @Override
+        public Expr visitSuperExpr(Expr.Super expr) {
+            return null;
+        }
+
+        @Override
+        public Expr visitThisExpr(Expr.This expr) {
+            return null;
+        }
+
+        @Override
+        public Expr visitUnaryExpr(Expr.Unary expr) {
+            Expr right = copy(expr.right);
+            if(right == null) return null;
+
+            return new Expr.Unary(expr.operator, right);
+        }
+
+        @Override
+        public Expr visitVariableExpr(Expr.Variable expr) {
+            if(expr.upvalue >= 0 || expr.captured) return null;
+
+            Expr.Variable copy = new Expr.Variable(expr.name);
+            if(expr.slot >= 0) copy.slot = base + expr.slot;
+            copy.global = expr.global;
+            return copy;
+        }
+    }
+}
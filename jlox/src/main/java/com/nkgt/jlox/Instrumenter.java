@@ -0,0 +1,230 @@
+package com.nkgt.jlox;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Switches the kind of every statement, call and assignment to TRACED, so
+// the interpreter reports them to its Tracer before running them as
+// usual. Nothing else changes, and remove() puts the old kinds back, so
+// code that isn't being traced runs exactly as it would without a tracer.
+class Instrumenter implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
+    private final List<Runnable> undo = new ArrayList<>();
+    private Tracer tracer;
+
+    void instrument(List<Stmt> statements, Tracer tracer) {
+        this.tracer = tracer;
+        walk(statements);
+        this.tracer = null;
+    }
+
+    void remove() {
+        undo.forEach(Runnable::run);
+        undo.clear();
+    }
+
+    @Override
+    public Void visitBlockStmt(Stmt.Block stmt) {
+        trace(stmt);
+        walk(stmt.statements);
+        return null;
+    }
+
+    @Override
+    public Void visitClassStmt(Stmt.Class stmt) {
+        trace(stmt);
+
+        for(Stmt.Function method : stmt.methods) {
+            walk(method.body);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitExpressionStmt(Stmt.Expression stmt) {
+        trace(stmt);
+        walk(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitFunctionStmt(Stmt.Function stmt) {
+        trace(stmt);
+        walk(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitIfStmt(Stmt.If stmt) {
+        trace(stmt);
+        walk(stmt.condition);
+        walk(stmt.thenBranch);
+        if(stmt.elseBranch != null) walk(stmt.elseBranch);
+        return null;
+    }
+
+    @Override
+    public Void visitPrintStmt(Stmt.Print stmt) {
+        trace(stmt);
+        walk(stmt.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitReturnStmt(Stmt.Return stmt) {
+        trace(stmt);
+        if(stmt.value != null) walk(stmt.value);
+        return null;
+    }
+
+    @Override
+    public Void visitVarStmt(Stmt.Var stmt) {
+        trace(stmt);
+        if(stmt.initializer != null) walk(stmt.initializer);
+        return null;
+    }
+
+    @Override
+    public Void visitWhileStmt(Stmt.While stmt) {
+        trace(stmt);
+        walk(stmt.condition);
+        walk(stmt.body);
+        return null;
+    }
+
+    @Override
+    public Void visitAssignExpr(Expr.Assign expr) {
+        trace(expr);
+        walk(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitBinaryExpr(Expr.Binary expr) {
+        walk(expr.left);
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitCallExpr(Expr.Call expr) {
+        trace(expr);
+        walk(expr.callee);
+
+        for(Expr argument : expr.arguments) {
+            walk(argument);
+        }
+
+        // An inlined call is made for real while it is traced, so the
+        // tracer sees the function's statements run.
+        Stmt.Function inlined = expr.inlined;
+        if(inlined != null) {
+            expr.inlined = null;
+            undo.add(() -> expr.inlined = inlined);
+        }
+
+        return null;
+    }
+
+    @Override
+    public Void visitGetExpr(Expr.Get expr) {
+        walk(expr.object);
+        return null;
+    }
+
+    @Override
+    public Void visitGroupingExpr(Expr.Grouping expr) {
+        walk(expr.expression);
+        return null;
+    }
+
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        walk(expr.object);
+        walk(expr.index);
+        return null;
+    }
+
+    @Override
+    public Void visitLiteralExpr(Expr.Literal expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitLogicalExpr(Expr.Logical expr) {
+        walk(expr.left);
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitSetExpr(Expr.Set expr) {
+        walk(expr.object);
+        walk(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        walk(expr.object);
+        walk(expr.index);
+        walk(expr.value);
+        return null;
+    }
+
+    @Override
+    public Void visitSuperExpr(Expr.Super expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitThisExpr(Expr.This expr) {
+        return null;
+    }
+
+    @Override
+    public Void visitUnaryExpr(Expr.Unary expr) {
+        walk(expr.right);
+        return null;
+    }
+
+    @Override
+    public Void visitVariableExpr(Expr.Variable expr) {
+        return null;
+    }
+
+    private void walk(List<Stmt> statements) {
+        for(Stmt statement : statements) {
+            walk(statement);
+        }
+    }
+
+    private void walk(Stmt stmt) {
+        stmt.accept(this);
+    }
+
+    private void walk(Expr expr) {
+        expr.accept(this);
+    }
+
+    // What the parser made up for a for loop is still walked, for the code
+    // inside it, but not reported.
+    private void trace(Stmt stmt) {
+        if(stmt.desugared) return;
+        tracer.loaded(stmt);
+
+        int kind = stmt.kind;
+        if(kind == Stmt.TRACED) return;
+
+        stmt.kind = Stmt.TRACED;
+        undo.add(() -> stmt.kind = kind);
+    }
+
+    private void trace(Expr expr) {
+        int kind = expr.kind;
+        if(kind == Expr.TRACED) return;
+
+        expr.kind = Expr.TRACED;
+        undo.add(() -> expr.kind = kind);
+    }
+}
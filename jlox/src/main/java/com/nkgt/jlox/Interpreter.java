@@ -2,72 +2,278 @@ package com.nkgt.jlox;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-
-public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
-    final Environment globals = new Environment();
-    private Environment environment = globals;
-    private final Map<Expr, Integer> locals = new HashMap<>();
+import java.util.Set;
+
+public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Object> {
+    // What executing a statement yields when control falls through to the
+    // next one. Anything else, null included, is a value being returned,
+    // passed back up through the enclosing blocks, ifs and loops to the
+    // call instead of thrown.
+    static final Object NORMAL = new Object();
+
+    final Environment globals;
+    private Frame frame;
+
+    // Set on the interpreters that run the chunks of a parallel map or
+    // reduce. They run alongside each other with no ordering, so they may
+    // only assign variables of their own: not globals, and not captured
+    // variables from outside the task.
+    private final boolean worker;
+
+    // Steps left in the slice taken from the budget. Loop back-edges and
+    // calls each spend one; the budget is only consulted once it runs out.
+    private int fuel = 0;
+    private final Budget budget;
+
+    // Bytes left in the slice of the memory quota, spent the same way.
+    private long memory = 0;
+    private final Output output;
     private final ASTPrinter printer = new ASTPrinter();
 
-    Interpreter() {
-        globals.define("clock", new LoxCallable() {
-            @Override
-            public int arity() {
-                return 0;
-            }
+    // Frames of calls that have returned, ready for the next call. Each
+    // interpreter has its own, so tasks never share one.
+    private static final int MAX_FREE_FRAMES = 64;
+    private final Frame[] freeFrames = new Frame[MAX_FREE_FRAMES];
+    private int freeFrameCount = 0;
+
+    // While a tracer is attached, every statement the interpreter is given
+    // is instrumented. Once a run is over only its functions and classes
+    // can run again, so those are all it keeps for a tracer attached later.
+    // A global declaration is kept under its name, so defining it again
+    // replaces it; any other is kept under itself, so running the same
+    // statements again adds nothing.
+    private volatile Tracer tracer;
+    private final Map<Object, Stmt> program = new LinkedHashMap<>();
+    private final Instrumenter instrumenter = new Instrumenter();
+
+    Interpreter(Output output, Budget budget) {
+        this.worker = false;
+        this.globals = new Environment();
+        this.output = output;
+        this.budget = budget;
+
+        Natives.define(
+                globals,
+                SystemNatives.class,
+                MathNatives.class,
+                StringNatives.class,
+                CollectionNatives.class,
+                BufferNatives.class,
+                ParallelNatives.class,
+                TaskNatives.class,
+                IONatives.class
+        );
+    }
 
-            @Override
-            public Object call(Interpreter interpreter, List<Object> arguments) {
-                return (double)System.currentTimeMillis() / 1000;
-            }
+    // For a parallel chunk or a spawned task. It has a frame of its own and
+    // sees the same globals and output as its parent.
+    Interpreter(Interpreter parent, boolean worker) {
+        this.worker = worker;
+        this.globals = parent.globals;
+        this.output = parent.output;
+        this.budget = parent.budget;
+        this.tracer = parent.tracer;
+    }
+
+    // Called by a parallel chunk or task when it is done with the
+    // interpreter, so the rest of its slices go back to the budget.
+    void finish() {
+        budget.giveBack(fuel, memory);
+        fuel = 0;
+        memory = 0;
+    }
+
+    // Stops the script, and every task it started, at their next slice.
+    // Safe to call from any thread.
+    void cancel() {
+        budget.cancel();
+    }
 
-            @Override
-            public String toString() { return "<native fn>"; }
-        });
+    // Call between runs, on the thread that runs the script. Code that
+    // isn't instrumented never looks at the tracer, so until one is
+    // attached tracing costs nothing.
+    void attach(Tracer tracer) {
+        this.tracer = tracer;
+        instrumenter.instrument(new ArrayList<>(program.values()), tracer);
     }
 
-    void interpret(List<Stmt> statements) {
+    void detach() {
+        instrumenter.remove();
+        tracer = null;
+    }
+
+    void interpret(List<Stmt> statements, int frameSize) {
+        for(Stmt statement : statements) {
+            keepDeclarations(statement);
+        }
+
+        Tracer tracer = this.tracer;
+        if(tracer != null) instrumenter.instrument(statements, tracer);
+
+        frame = new Frame(frameSize, new Cell[0]);
+
         StringBuilder ASTOutput = new StringBuilder();
         ASTOutput.append("-----AST-----\n");
 
         try {
             for(Stmt statement : statements) {
                 ASTOutput.append(printer.print(statement)).append("\n");
-                statement.accept(this);
+                execute(statement);
             }
         } catch (RuntimeError error) {
+            output.flush();
             Lox.runtimeError(error);
         }
 
         ASTOutput.append("-------------\n");
-        System.out.println(ASTOutput);
+        output.println(ASTOutput.toString());
+    }
+
+    // A function body is instrumented along with its declaration, so the
+    // walk stops there.
+    private void keepDeclarations(Stmt stmt) {
+        if(stmt instanceof Stmt.Function function) {
+            program.put(function.slot < 0 ? function.name.lexeme : function, function);
+        } else if(stmt instanceof Stmt.Class klass) {
+            program.put(klass.slot < 0 ? klass.name.lexeme : klass, klass);
+        } else if(stmt instanceof Stmt.Block block) {
+            for(Stmt statement : block.statements) {
+                keepDeclarations(statement);
+            }
+        } else if(stmt instanceof Stmt.If ifStmt) {
+            keepDeclarations(ifStmt.thenBranch);
+            if(ifStmt.elseBranch != null) keepDeclarations(ifStmt.elseBranch);
+        } else if(stmt instanceof Stmt.While whileStmt) {
+            keepDeclarations(whileStmt.body);
+        }
     }
 
-    void executeBlock(List<Stmt> statements, Environment environment) {
-        Environment previous = this.environment;
+    Object executeBlock(List<Stmt> statements, Frame frame) {
+        Frame previous = this.frame;
 
         try {
-            this.environment = environment;
+            this.frame = frame;
 
             for(Stmt statement : statements) {
-                statement.accept(this);
+                Object completion = execute(statement);
+                if(completion != NORMAL) return completion;
             }
+
+            return NORMAL;
         } finally {
-            this.environment = previous;
+            this.frame = previous;
         }
     }
 
-    void resolve(Expr expr, int depth) {
-        locals.put(expr, depth);
+    Frame acquireFrame(int size, Cell[] upvalues) {
+        if(freeFrameCount == 0) return new Frame(size, upvalues);
+
+        Frame frame = freeFrames[--freeFrameCount];
+        frame.reuse(size, upvalues);
+        return frame;
+    }
+
+    // A call that ends in a runtime error never gives its frame back, which
+    // only means the next call allocates one.
+    void releaseFrame(Frame frame) {
+        if(freeFrameCount == MAX_FREE_FRAMES) return;
+
+        frame.clear();
+        freeFrames[freeFrameCount++] = frame;
+    }
+
+    // Dispatch on the node's kind rather than through accept(): the switch
+    // becomes a jump table, and every case is a direct call the JIT can
+    // inline, where accept() is one virtual call site shared by all nodes.
+    private Object evaluate(Expr expr) {
+        return switch(expr.kind) {
+            case Expr.ASSIGN -> visitAssignExpr((Expr.Assign) expr);
+            case Expr.BINARY -> visitBinaryExpr((Expr.Binary) expr);
+            case Expr.CALL -> visitCallExpr((Expr.Call) expr);
+            case Expr.GET -> visitGetExpr((Expr.Get) expr);
+            case Expr.GROUPING -> visitGroupingExpr((Expr.Grouping) expr);
+            case Expr.INDEX -> visitIndexExpr((Expr.Index) expr);
+            case Expr.LITERAL -> visitLiteralExpr((Expr.Literal) expr);
+            case Expr.LOGICAL -> visitLogicalExpr((Expr.Logical) expr);
+            case Expr.SET -> visitSetExpr((Expr.Set) expr);
+            case Expr.SET_INDEX -> visitSetIndexExpr((Expr.SetIndex) expr);
+            case Expr.SUPER -> visitSuperExpr((Expr.Super) expr);
+            case Expr.THIS -> visitThisExpr((Expr.This) expr);
+            case Expr.UNARY -> visitUnaryExpr((Expr.Unary) expr);
+            case Expr.VARIABLE -> visitVariableExpr((Expr.Variable) expr);
+            case Expr.TRACED -> traced(expr);
+            default -> throw new IllegalStateException("Unknown expression kind " + expr.kind + ".");
+        };
+    }
+
+    // Returns NORMAL, or the value of a 'return' on its way out to the
+    // enclosing call.
+    private Object execute(Stmt stmt) {
+        return switch(stmt.kind) {
+            case Stmt.BLOCK -> visitBlockStmt((Stmt.Block) stmt);
+            case Stmt.CLASS -> visitClassStmt((Stmt.Class) stmt);
+            case Stmt.EXPRESSION -> visitExpressionStmt((Stmt.Expression) stmt);
+            case Stmt.FUNCTION -> visitFunctionStmt((Stmt.Function) stmt);
+            case Stmt.IF -> visitIfStmt((Stmt.If) stmt);
+            case Stmt.PRINT -> visitPrintStmt((Stmt.Print) stmt);
+            case Stmt.RETURN -> visitReturnStmt((Stmt.Return) stmt);
+            case Stmt.VAR -> visitVarStmt((Stmt.Var) stmt);
+            case Stmt.WHILE -> visitWhileStmt((Stmt.While) stmt);
+            case Stmt.TRACED -> traced(stmt);
+            default -> throw new IllegalStateException("Unknown statement kind " + stmt.kind + ".");
+        };
+    }
+
+    // Instrumented nodes are run through accept(), which doesn't look at
+    // the kind. The tracer is read once, as detach() may clear it while a
+    // task is still running.
+    private Object traced(Stmt stmt) {
+        Tracer tracer = this.tracer;
+        if(tracer == null) return stmt.accept(this);
+        if(stmt instanceof Stmt.While loop) return tracedWhile(loop);
+
+        tracer.statement(stmt);
+        return stmt.accept(this);
+    }
+
+    // visitWhileStmt, reporting the loop before every test of the condition
+    // so its count is how many times the line ran.
+    private Object tracedWhile(Stmt.While stmt) {
+        for(;;) {
+            Tracer tracer = this.tracer;
+            if(tracer != null) tracer.statement(stmt);
+            if(!getBoolean(evaluate(stmt.condition))) return NORMAL;
+
+            Object completion = execute(stmt.body);
+            if(completion != NORMAL) return completion;
+            if(--fuel < 0) refuel(stmt.keyword);
+        }
+    }
+
+    private Object traced(Expr expr) {
+        Tracer tracer = this.tracer;
+        if(tracer == null) return expr.accept(this);
+
+        if(expr instanceof Expr.Call call) {
+            tracer.callEntered(call);
+            Object result = visitCallExpr(call);
+            tracer.callExited(call, result);
+            return result;
+        }
+
+        Object value = expr.accept(this);
+        if(expr instanceof Expr.Assign assign) tracer.assigned(assign, value);
+        return value;
     }
 
     @Override
-    public Void visitClassStmt(Stmt.Class stmt) {
+    public Object visitClassStmt(Stmt.Class stmt) {
         Object superclass = null;
         if(stmt.superclass != null) {
-            superclass = stmt.superclass.accept(this);
+            superclass = evaluate(stmt.superclass);
             if(!(superclass instanceof LoxClass)) {
                 throw new RuntimeError(
                         stmt.superclass.name,
@@ -76,20 +282,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             }
         }
 
-        environment.define(stmt.name.lexeme, null);
+        declareVariable(stmt.name, stmt.slot, stmt.captured, null);
 
         if(stmt.superclass != null) {
-            environment = new Environment(environment);
-            environment.define("super", superclass);
+            frame.slots[stmt.superSlot] = newCell(superclass);
         }
 
+        allocate(stmt.name, Budget.CLASS_BYTES);
+
         Map<String, LoxFunction> methods = new HashMap<>();
         for(Stmt.Function method : stmt.methods) {
+            allocate(method.name, closureBytes(method));
             methods.put(
                     method.name.lexeme,
                     new LoxFunction(
                             method,
-                            environment,
+                            captureUpvalues(method),
                             method.name.lexeme.equals("init")
                     )
             );
@@ -101,82 +309,86 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                 methods
         );
 
-        if(superclass != null) {
-            environment = environment.enclosing;
-        }
-
-        environment.assign(stmt.name, klass);
-        return null;
+        initializeVariable(stmt.name, stmt.slot, stmt.captured, klass);
+        return NORMAL;
     }
 
     @Override
-    public Void visitBlockStmt(Stmt.Block stmt) {
-        executeBlock(stmt.statements, new Environment(environment));
-        return null;
+    public Object visitBlockStmt(Stmt.Block stmt) {
+        for(Stmt statement : stmt.statements) {
+            Object completion = execute(statement);
+            if(completion != NORMAL) return completion;
+        }
+
+        return NORMAL;
     }
 
     @Override
-    public Void visitVarStmt(Stmt.Var stmt) {
+    public Object visitVarStmt(Stmt.Var stmt) {
         Object value = null;
         if(stmt.initializer != null) {
-            value = stmt.initializer.accept(this);
+            value = evaluate(stmt.initializer);
         }
 
-        environment.define(stmt.name.lexeme, value);
-        return null;
+        declareVariable(stmt.name, stmt.slot, stmt.captured, value);
+        return NORMAL;
     }
 
     @Override
-    public Void visitWhileStmt(Stmt.While stmt) {
-        while(getBoolean(stmt.condition.accept(this))) {
-            stmt.body.accept(this);
+    public Object visitWhileStmt(Stmt.While stmt) {
+        while(getBoolean(evaluate(stmt.condition))) {
+            Object completion = execute(stmt.body);
+            if(completion != NORMAL) return completion;
+            if(--fuel < 0) refuel(stmt.keyword);
         }
 
-        return null;
+        return NORMAL;
     }
 
     @Override
     public Object visitVariableExpr(Expr.Variable expr) {
-        return lookUpVariable(expr.name, expr);
+        return lookUpVariable(expr.name, expr.slot, expr.upvalue, expr.captured, expr.global);
     }
 
     @Override
-    public Void visitExpressionStmt(Stmt.Expression stmt) {
-        stmt.expression.accept(this);
-        return null;
+    public Object visitExpressionStmt(Stmt.Expression stmt) {
+        evaluate(stmt.expression);
+        return NORMAL;
     }
 
     @Override
-    public Void visitFunctionStmt(Stmt.Function stmt) {
-        LoxFunction function = new LoxFunction(stmt, environment, false);
-        environment.define(stmt.name.lexeme, function);
-        return null;
+    public Object visitFunctionStmt(Stmt.Function stmt) {
+        // Declared first so that a local function can capture itself.
+        declareVariable(stmt.name, stmt.slot, stmt.captured, null);
+
+        allocate(stmt.name, closureBytes(stmt));
+        LoxFunction function = new LoxFunction(stmt, captureUpvalues(stmt), false);
+        initializeVariable(stmt.name, stmt.slot, stmt.captured, function);
+        return NORMAL;
     }
 
     @Override
-    public Void visitIfStmt(Stmt.If stmt) {
-        if(getBoolean(stmt.condition.accept((this)))) {
-            stmt.thenBranch.accept(this);
+    public Object visitIfStmt(Stmt.If stmt) {
+        if(getBoolean(evaluate(stmt.condition))) {
+            return execute(stmt.thenBranch);
         } else if(stmt.elseBranch != null) {
-            stmt.elseBranch.accept(this);
+            return execute(stmt.elseBranch);
         }
 
-        return null;
+        return NORMAL;
     }
 
     @Override
-    public Void visitPrintStmt(Stmt.Print stmt) {
-        Object value = stmt.expression.accept(this);
-        System.out.println(stringify(value));
-        return null;
+    public Object visitPrintStmt(Stmt.Print stmt) {
+        Object value = evaluate(stmt.expression);
+        output.println(stringify(value));
+        return NORMAL;
     }
 
     @Override
-    public Void visitReturnStmt(Stmt.Return stmt) {
-        Object value = null;
-        if(stmt.value != null) value = stmt.value.accept(this);
-
-        throw new Return(value);
+    public Object visitReturnStmt(Stmt.Return stmt) {
+        if(stmt.value == null) return null;
+        return evaluate(stmt.value);
     }
 
     @Override
@@ -186,24 +398,79 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitSetExpr(Expr.Set expr) {
-        Object object = expr.object.accept(this);
+        Object object = evaluate(expr.object);
 
         if(!(object instanceof  LoxInstance)) {
             throw new RuntimeError(expr.name, "Only instances have fields.");
         }
 
-        Object value = expr.value.accept(this);
-        ((LoxInstance)object).set(expr.name, value);
+        Object value = evaluate(expr.value);
+        if(((LoxInstance)object).set(expr.name, value)) {
+            allocate(expr.name, Budget.FIELD_BYTES);
+        }
 
         return null;
     }
 
     @Override
-    public Object visitSuperExpr(Expr.Super expr) {
-        int distance = locals.get(expr);
+    public Object visitIndexExpr(Expr.Index expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+
+        if(object instanceof LoxArray array) {
+            return array.get((int) checkIndex(expr.bracket, index, array.length()));
+        }
+
+        if(object instanceof LoxMap map) {
+            return map.get(index);
+        }
+
+        if(object instanceof LoxBuffer buffer) {
+            return buffer.get(checkIndex(expr.bracket, index, buffer.length()));
+        }
 
-        LoxClass superclass = (LoxClass) environment.getAt(distance, "super");
-        LoxInstance object = (LoxInstance) environment.getAt(distance - 1, "this");
+        throw new RuntimeError(expr.bracket, "Only arrays, maps and buffers can be indexed.");
+    }
+
+    @Override
+    public Object visitSetIndexExpr(Expr.SetIndex expr) {
+        Object object = evaluate(expr.object);
+        Object index = evaluate(expr.index);
+        Object value = evaluate(expr.value);
+
+        if(object instanceof LoxArray array) {
+            array.set((int) checkIndex(expr.bracket, index, array.length()), value);
+        } else if(object instanceof LoxMap map) {
+            if(map.put(index, value)) allocate(expr.bracket, Budget.ENTRY_BYTES);
+        } else if(object instanceof LoxBuffer buffer) {
+            long position = checkIndex(expr.bracket, index, buffer.length());
+
+            if(!(value instanceof Double number)) {
+                throw new RuntimeError(expr.bracket, "Buffers can only hold numbers.");
+            }
+
+            if(buffer.isReadOnly()) {
+                throw new RuntimeError(expr.bracket, "Buffer is read-only.");
+            }
+
+            buffer.set(position, number);
+        } else {
+            throw new RuntimeError(expr.bracket, "Only arrays, maps and buffers can be indexed.");
+        }
+
+        return value;
+    }
+
+    @Override
+    public Object visitSuperExpr(Expr.Super expr) {
+        LoxClass superclass = (LoxClass) frame.upvalues[expr.upvalue].value;
+        LoxInstance object = (LoxInstance) lookUpVariable(
+                expr.keyword,
+                expr.thisSlot,
+                expr.thisUpvalue,
+                expr.thisCaptured,
+                -1
+        );
         LoxFunction method = superclass.findMethod(expr.method.lexeme);
 
         if(method == null) {
@@ -218,12 +485,12 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitThisExpr(Expr.This expr) {
-        return lookUpVariable(expr.keyword, expr);
+        return lookUpVariable(expr.keyword, expr.slot, expr.upvalue, expr.captured, -1);
     }
 
     @Override
     public Object visitLogicalExpr(Expr.Logical expr) {
-        Object left = expr.left.accept(this);
+        Object left = evaluate(expr.left);
 
         if(expr.operator.type == TokenType.OR) {
             if(getBoolean(left)) return left;
@@ -231,17 +498,17 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
             if(!getBoolean(left)) return left;
         }
 
-        return expr.right.accept(this);
+        return evaluate(expr.right);
     }
 
     @Override
     public Object visitGroupingExpr(Expr.Grouping expr) {
-        return expr.expression.accept(this);
+        return evaluate(expr.expression);
     }
 
     @Override
     public Object visitUnaryExpr(Expr.Unary expr) {
-        Object right = expr.right.accept(this);
+        Object right = evaluate(expr.right);
 
         return switch (expr.operator.type) {
             case MINUS -> {
@@ -256,8 +523,8 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitBinaryExpr(Expr.Binary expr) {
-        Object left = expr.left.accept(this);
-        Object right = expr.right.accept(this);
+        Object left = evaluate(expr.left);
+        Object right = evaluate(expr.right);
 
         return switch (expr.operator.type) {
             case MINUS -> {
@@ -269,8 +536,22 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
                     yield (double) left + (double) right;
                 }
 
-                if(left instanceof String && right instanceof String) {
-                   yield left + (String)right;
+                if(left instanceof CharSequence leftText && right instanceof CharSequence rightText) {
+                    if((long) leftText.length() + rightText.length() > Rope.MAX_LENGTH) {
+                        throw new RuntimeError(expr.operator, "String would be longer than " + Rope.MAX_LENGTH + " characters.");
+                    }
+
+                    CharSequence text = Rope.concat(leftText, rightText);
+
+                    // A rope is charged for the string it flattens into
+                    // as well, since flattening it charges nothing.
+                    if(text instanceof Rope) {
+                        allocate(expr.operator, Budget.ROPE_BYTES + Budget.stringBytes(text.length()));
+                    } else if(text != leftText && text != rightText) {
+                        allocate(expr.operator, Budget.stringBytes(text.length()));
+                    }
+
+                    yield text;
                 }
 
                 throw new RuntimeError(
@@ -310,31 +591,73 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitCallExpr(Expr.Call expr) {
-        Object callee = expr.callee.accept(this);
+        if(--fuel < 0) refuel(expr.paren);
 
-        List<Object> arguments = new ArrayList<>();
-        for(Expr argument : expr.arguments) {
-            arguments.add(argument.accept(this));
+        Object callee = evaluate(expr.callee);
+
+        if(expr.inlined != null &&
+           callee instanceof LoxFunction function &&
+           function.declaration == expr.inlined) {
+            for(int i = 0; i < expr.arguments.size(); i++) {
+                frame.slots[expr.inlinedBase + i] = evaluate(expr.arguments.get(i));
+            }
+
+            return evaluate(expr.inlinedBody);
         }
 
+        // Arguments are all evaluated before the callee is checked.
+        List<Expr> arguments = expr.arguments;
+        try {
+            return switch(arguments.size()) {
+                case 0 -> callable(callee, expr.paren, 0).call0(this);
+                case 1 -> {
+                    Object first = evaluate(arguments.get(0));
+                    yield callable(callee, expr.paren, 1).call1(this, first);
+                }
+                case 2 -> {
+                    Object first = evaluate(arguments.get(0));
+                    Object second = evaluate(arguments.get(1));
+                    yield callable(callee, expr.paren, 2).call2(this, first, second);
+                }
+                case 3 -> {
+                    Object first = evaluate(arguments.get(0));
+                    Object second = evaluate(arguments.get(1));
+                    Object third = evaluate(arguments.get(2));
+                    yield callable(callee, expr.paren, 3).call3(this, first, second, third);
+                }
+                default -> {
+                    Object[] values = new Object[arguments.size()];
+                    for(int i = 0; i < values.length; i++) {
+                        values[i] = evaluate(arguments.get(i));
+                    }
+
+                    yield callable(callee, expr.paren, values.length).call(this, values);
+                }
+            };
+        } catch(NativeError error) {
+            throw new RuntimeError(expr.paren, error.getMessage());
+        }
+    }
+
+    private LoxCallable callable(Object callee, Token paren, int argumentCount) {
         if(!(callee instanceof LoxCallable function)) {
-            throw new RuntimeError(expr.paren, "Can only call function and classes");
+            throw new RuntimeError(paren, "Can only call function and classes");
         }
 
-        if(arguments.size() != function.arity()) {
+        if(argumentCount != function.arity()) {
             throw new RuntimeError(
-                    expr.paren,
+                    paren,
                     "Expected " + function.arity() + " arguments but got " +
-                    arguments.size() + "."
+                    argumentCount + "."
             );
         }
 
-        return function.call(this, arguments);
+        return function;
     }
 
     @Override
     public Object visitGetExpr(Expr.Get expr) {
-        Object object = expr.object.accept(this);
+        Object object = evaluate(expr.object);
 
         if(object instanceof LoxInstance) {
             return ((LoxInstance) object).get(expr.name);
@@ -345,18 +668,76 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
 
     @Override
     public Object visitAssignExpr(Expr.Assign expr) {
-        Object value = expr.value.accept(this);
+        Object value = evaluate(expr.value);
 
-        Integer distance = locals.get(expr);
-        if(distance != null) {
-            environment.assignAt(distance, expr.name, value);
+        if(expr.slot >= 0) {
+            if(expr.captured) {
+                ((Cell) frame.slots[expr.slot]).value = value;
+            } else {
+                frame.slots[expr.slot] = value;
+            }
+        } else if(expr.upvalue >= 0) {
+            Cell cell = frame.upvalues[expr.upvalue];
+            if(worker && cell.owner != this) {
+                throw new RuntimeError(
+                        expr.name,
+                        "Can't assign to captured variable '" + expr.name.lexeme + "' in a parallel task."
+                );
+            }
+
+            cell.value = value;
+        } else if(worker) {
+            throw new RuntimeError(
+                    expr.name,
+                    "Can't assign to global variable '" + expr.name.lexeme + "' in a parallel task."
+            );
         } else {
-            globals.assign(expr.name, value);
+            globals.assign(expr.global, expr.name, value);
         }
 
         return value;
     }
 
+    Cell newCell(Object value) {
+        return new Cell(value, worker ? this : null);
+    }
+
+    private void refuel(Token token) {
+        fuel = budget.take(token) - 1;
+    }
+
+    void allocate(Token token, long bytes) {
+        if(!charge(bytes)) {
+            throw new RuntimeError(token, "Script exceeded its memory quota.");
+        }
+    }
+
+    // For natives and callables, which have no token; the error is reported
+    // at their call.
+    void allocate(long bytes) {
+        if(!charge(bytes)) {
+            throw new NativeError("Script exceeded its memory quota.");
+        }
+    }
+
+    // Takes the bytes from the slice, reserving another when it runs out.
+    // A charge that fails leaves the slice as it was, so it never goes
+    // negative.
+    private boolean charge(long bytes) {
+        if(bytes < 0) throw new IllegalArgumentException("Negative allocation of " + bytes + " bytes.");
+
+        if(bytes <= memory) {
+            memory -= bytes;
+            return true;
+        }
+
+        long slice = budget.reserve(bytes - memory);
+        if(slice == 0) return false;
+
+        memory = memory - bytes + slice;
+        return true;
+    }
+
     private boolean getBoolean(Object object) {
         if(object == null) return false;
         if(object instanceof Boolean) return (boolean)object;
@@ -366,9 +747,29 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
     private boolean isEqual(Object left, Object right) {
         if(left == null && right == null) return true;
         if(left == null) return false;
+
+        // Concatenated strings compare by their characters, whichever way
+        // each side happens to be represented.
+        if(left instanceof Rope || right instanceof Rope) {
+            return left instanceof CharSequence && right instanceof CharSequence &&
+                   left.toString().equals(right.toString());
+        }
+
         return left.equals(right);
     }
 
+    private long checkIndex(Token bracket, Object index, long length) {
+        if(!(index instanceof Double number) || number != Math.floor(number)) {
+            throw new RuntimeError(bracket, "Index must be an integer.");
+        }
+
+        if(number < 0 || number >= length) {
+            throw new RuntimeError(bracket, "Index out of bounds.");
+        }
+
+        return (long)(double) number;
+    }
+
     private void checkNumberOperand(Token operator, Object operand) {
         if(operand instanceof Double) return;
         throw new RuntimeError(operator, "Operand must be a number");
@@ -379,7 +780,7 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         throw new RuntimeError(operator, "Operands must be numbers");
     }
 
-    private String stringify(Object object) {
+    static String stringify(Object object) {
         if(object == null) return "nil";
 
         if(object instanceof Double) {
@@ -394,13 +795,68 @@ public class Interpreter implements Expr.Visitor<Object>, Stmt.Visitor<Void> {
         return object.toString();
     }
 
-    private Object lookUpVariable(Token name, Expr expr) {
-        Integer distance = locals.get(expr);
+    // For an element of a collection that is being printed.
+    static void stringify(StringBuilder builder, Object object, Set<Object> printing) {
+        if(object instanceof LoxArray array) {
+            array.appendTo(builder, printing);
+        } else if(object instanceof LoxMap map) {
+            map.appendTo(builder, printing);
+        } else {
+            builder.append(stringify(object));
+        }
+    }
+
+    private Object lookUpVariable(Token name, int slot, int upvalue, boolean captured, int global) {
+        if(slot >= 0) {
+            Object value = frame.slots[slot];
+            return captured ? ((Cell) value).value : value;
+        }
+
+        if(upvalue >= 0) return frame.upvalues[upvalue].value;
+
+        return globals.get(global, name);
+    }
+
+    private void declareVariable(Token name, int slot, boolean captured, Object value) {
+        if(slot < 0) {
+            globals.define(name.lexeme, value);
+        } else {
+            frame.slots[slot] = captured ? newCell(value) : value;
+        }
+    }
 
-        if(distance != null) {
-            return environment.getAt(distance, name.lexeme);
+    private void initializeVariable(Token name, int slot, boolean captured, Object value) {
+        if(slot < 0) {
+            globals.define(name.lexeme, value);
+        } else if(captured) {
+            ((Cell) frame.slots[slot]).value = value;
         } else {
-            return globals.get(name);
+            frame.slots[slot] = value;
         }
     }
+
+    private static long closureBytes(Stmt.Function function) {
+        return Budget.CLOSURE_BYTES + Budget.UPVALUE_BYTES * function.upvalues.length;
+    }
+
+    // A slot holding a Cell is shared with the closure; any other slot is a
+    // local that never changes once the closure exists, so its value is
+    // copied into a Cell of the closure's own.
+    private Cell[] captureUpvalues(Stmt.Function function) {
+        Cell[] upvalues = new Cell[function.upvalues.length];
+
+        for(int i = 0; i < upvalues.length; i++) {
+            int source = function.upvalues[i];
+
+            if(source < 0) {
+                upvalues[i] = frame.upvalues[-1 - source];
+            } else if(frame.slots[source] instanceof Cell cell) {
+                upvalues[i] = cell;
+            } else {
+                upvalues[i] = newCell(frame.slots[source]);
+            }
+        }
+
+        return upvalues;
+    }
 }
@@ -12,22 +12,101 @@ public class Lox {
     static boolean hadError = false;
     static boolean hadRuntimeError = false;
 
-    private static final Interpreter interpreter = new Interpreter();
+    private static Output output;
+    private static Interpreter interpreter;
+    private static String coverage = null;
 
     public static void main(String[] args) throws IOException {
-        if(args.length > 1) {
-            System.out.println("Usage: jlox [script]");
-            System.exit(64);
-        } else if (args.length == 1) {
-            runFile(args[0]);
+        String script = null;
+        String outputPath = null;
+        int bufferSize = Output.DEFAULT_BUFFER_SIZE;
+        long fuel = Budget.UNLIMITED;
+        long memory = Budget.UNLIMITED;
+        boolean trace = false;
+
+        for(int i = 0; i < args.length; i++) {
+            if(args[i].equals("--output") && i + 1 < args.length) {
+                outputPath = args[++i];
+            } else if(args[i].equals("--buffer-size") && i + 1 < args.length) {
+                bufferSize = parseBufferSize(args[++i]);
+            } else if(args[i].equals("--fuel") && i + 1 < args.length) {
+                fuel = parseLimit(args[++i]);
+            } else if(args[i].equals("--trace")) {
+                trace = true;
+            } else if(args[i].equals("--coverage") && i + 1 < args.length) {
+                coverage = args[++i];
+            } else if(args[i].equals("--memory") && i + 1 < args.length) {
+                memory = parseLimit(args[++i]);
+            } else if(script == null && !args[i].startsWith("--")) {
+                script = args[i];
+            } else {
+                usage();
+            }
+        }
+
+        // Coverage counts lines of a single script, and takes the tracer.
+        if(coverage != null && (script == null || trace)) usage();
+
+        output = outputPath == null
+                ? Output.stdout(bufferSize)
+                : Output.file(Paths.get(outputPath), bufferSize);
+        interpreter = new Interpreter(output, new Budget(fuel, memory));
+        if(trace) interpreter.attach(new TraceLog(System.err));
+
+        if (script != null) {
+            runFile(script);
         } else {
             runPrompt();
         }
     }
 
+    private static int parseBufferSize(String text) {
+        try {
+            int size = Integer.parseInt(text);
+            if(size >= Output.MIN_BUFFER_SIZE) return size;
+        } catch(NumberFormatException ignored) {}
+
+        usage();
+        return 0;
+    }
+
+    private static long parseLimit(String text) {
+        try {
+            long limit = Long.parseLong(text);
+            if(limit > 0) return limit;
+        } catch(NumberFormatException ignored) {}
+
+        usage();
+        return 0;
+    }
+
+    private static void usage() {
+        System.out.println("Usage: jlox [--output file] [--buffer-size bytes] [--fuel steps] [--memory bytes] [--trace] [--coverage prefix] [script]");
+        System.exit(64);
+    }
+
     public static void runFile(String path) throws IOException {
         byte[] bytes = Files.readAllBytes(Paths.get(path));
-        run(new String(bytes, Charset.defaultCharset()));
+        String source = new String(bytes, Charset.defaultCharset());
+
+        Coverage counter = null;
+        if(coverage != null) {
+            counter = new Coverage(source);
+            interpreter.attach(counter);
+        }
+
+        try {
+            run(source);
+        } finally {
+            output.close();
+        }
+
+        // Written even when the script failed at runtime: the counts show
+        // how far it got.
+        if(counter != null && !hadError) {
+            counter.writeReport(source, Paths.get(coverage + ".txt"));
+            counter.writeLcov(Paths.get(path), Paths.get(coverage + ".info"));
+        }
 
         if(hadError) System.exit(65);
         if(hadRuntimeError) System.exit(70);
@@ -38,7 +117,8 @@ public class Lox {
         BufferedReader reader = new BufferedReader(input);
 
         for(;;) {
-            System.out.print("> ");
+            output.print("> ");
+            output.flush();
             String line = reader.readLine();
 
             if(line == null) break;
@@ -46,22 +126,27 @@ public class Lox {
             run(line);
             hadError = false;
         }
+
+        output.close();
     }
 
     private static void run(String source) {
         Scanner scanner = new Scanner(source);
-        List<Token> tokens = scanner.scanTokens();
+        TokenBuffer tokens = scanner.scanTokens();
         Parser parser = new Parser(tokens);
         List<Stmt> statements = parser.parse();
 
         if(hadError) return;
 
-        Resolver resolver = new Resolver(interpreter);
+        Resolver resolver = new Resolver(interpreter.globals);
         resolver.resolve(statements);
 
         if(hadError) return;
 
-        interpreter.interpret(statements);
+        Inliner inliner = new Inliner(resolver.frameSize());
+        inliner.inline(statements);
+
+        interpreter.interpret(statements, inliner.frameSize());
     }
 
     static void error(int line, String message) {
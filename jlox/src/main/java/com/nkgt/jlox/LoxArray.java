@@ -0,0 +1,123 @@
+package com.nkgt.jlox;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+// A growable array. While every element is a number or nil the elements
+// are kept unboxed in a double[]; storing anything else switches it to an
+// Object[] for good.
+final class LoxArray {
+    // nil inside the double[]: a NaN payload that arithmetic never produces.
+    // NaNs are stored as the canonical one, so a NaN carrying this payload
+    // from elsewhere, such as a mapped buffer, doesn't turn into nil.
+    private static final long NIL_BITS = 0x7ff8_dead_0000_0000L;
+    private static final double NIL = Double.longBitsToDouble(NIL_BITS);
+
+    // The most elements a Java array can safely be asked for.
+    static final int MAX_LENGTH = Integer.MAX_VALUE - 8;
+
+    private double[] numbers;
+    private Object[] values;
+    private int length;
+
+    LoxArray(int length) {
+        this.numbers = new double[Math.max(length, 8)];
+        this.length = length;
+        Arrays.fill(numbers, 0, length, NIL);
+    }
+
+    int length() {
+        return length;
+    }
+
+    Object get(int index) {
+        if(numbers != null) {
+            double number = numbers[index];
+            if(Double.doubleToRawLongBits(number) == NIL_BITS) return null;
+            return number;
+        }
+
+        return values[index];
+    }
+
+    void set(int index, Object value) {
+        if(numbers != null) {
+            if(value instanceof Double number) {
+                double unboxed = number;
+                numbers[index] = Double.isNaN(unboxed) ? Double.NaN : unboxed;
+                return;
+            }
+
+            if(value == null) {
+                numbers[index] = NIL;
+                return;
+            }
+
+            box();
+        }
+
+        values[index] = value;
+    }
+
+    // Throws OutOfMemoryError when there isn't room to grow.
+    void push(Object value) {
+        if(length == MAX_LENGTH) throw new NativeError("Array can't hold more than " + MAX_LENGTH + " elements.");
+
+        int capacity = numbers != null ? numbers.length : values.length;
+        if(length == capacity) {
+            int grown = (int) Math.min(2L * capacity, MAX_LENGTH);
+            if(numbers != null) {
+                numbers = Arrays.copyOf(numbers, grown);
+            } else {
+                values = Arrays.copyOf(values, grown);
+            }
+        }
+
+        length++;
+        set(length - 1, value);
+    }
+
+    Object pop() {
+        Object value = get(length - 1);
+        set(length - 1, null);
+        length--;
+        return value;
+    }
+
+    private void box() {
+        values = new Object[numbers.length];
+        for(int i = 0; i < length; i++) {
+            values[i] = get(i);
+        }
+
+        numbers = null;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return builder.toString();
+    }
+
+    // The collections in printing are the ones this array is inside of, so
+    // an array that contains itself is printed as [...] where it recurs.
+    void appendTo(StringBuilder builder, Set<Object> printing) {
+        if(!printing.add(this)) {
+            builder.append("[...]");
+            return;
+        }
+
+        builder.append("[");
+
+        for(int i = 0; i < length; i++) {
+            if(i != 0) builder.append(", ");
+            Interpreter.stringify(builder, get(i), printing);
+        }
+
+        builder.append("]");
+        printing.remove(this);
+    }
+}
@@ -0,0 +1,93 @@
+package com.nkgt.jlox;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// A fixed-size array of doubles stored outside the Java heap, either freshly
+// allocated or mapped from a file of little-endian doubles. The memory is
+// split into 1 GiB chunks so a buffer can be larger than one ByteBuffer.
+final class LoxBuffer {
+    private static final int CHUNK_SHIFT = 27;
+    private static final long CHUNK_LENGTH = 1L << CHUNK_SHIFT;
+    private static final long CHUNK_MASK = CHUNK_LENGTH - 1;
+
+    // The largest length a Lox number holds exactly. Its chunk count still
+    // fits in an int, which a longer buffer's might not.
+    static final long MAX_LENGTH = 1L << 53;
+
+    private final ByteBuffer[] chunks;
+    private final long length;
+    private final boolean readOnly;
+
+    private LoxBuffer(ByteBuffer[] chunks, long length, boolean readOnly) {
+        this.chunks = chunks;
+        this.length = length;
+        this.readOnly = readOnly;
+    }
+
+    // Throws OutOfMemoryError when there isn't that much direct memory.
+    static LoxBuffer allocate(long length) {
+        if(length < 0 || length > MAX_LENGTH) {
+            throw new IllegalArgumentException("Bad buffer length " + length + ".");
+        }
+
+        ByteBuffer[] chunks = new ByteBuffer[chunkCount(length)];
+
+        for(int i = 0; i < chunks.length; i++) {
+            long elements = Math.min(CHUNK_LENGTH, length - i * CHUNK_LENGTH);
+            chunks[i] = ByteBuffer.allocateDirect((int) (elements * Double.BYTES))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        return new LoxBuffer(chunks, length, false);
+    }
+
+    static LoxBuffer map(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long length = channel.size() / Double.BYTES;
+            ByteBuffer[] chunks = new ByteBuffer[chunkCount(length)];
+
+            for(int i = 0; i < chunks.length; i++) {
+                long elements = Math.min(CHUNK_LENGTH, length - i * CHUNK_LENGTH);
+                chunks[i] = channel.map(
+                        FileChannel.MapMode.READ_ONLY,
+                        i * CHUNK_LENGTH * Double.BYTES,
+                        elements * Double.BYTES
+                ).order(ByteOrder.LITTLE_ENDIAN);
+            }
+
+            return new LoxBuffer(chunks, length, true);
+        }
+    }
+
+    long length() {
+        return length;
+    }
+
+    boolean isReadOnly() {
+        return readOnly;
+    }
+
+    double get(long index) {
+        return chunks[(int)(index >>> CHUNK_SHIFT)]
+                .getDouble((int)(index & CHUNK_MASK) * Double.BYTES);
+    }
+
+    void set(long index, double value) {
+        chunks[(int)(index >>> CHUNK_SHIFT)]
+                .putDouble((int)(index & CHUNK_MASK) * Double.BYTES, value);
+    }
+
+    private static int chunkCount(long length) {
+        return (int)((length + CHUNK_LENGTH - 1) >>> CHUNK_SHIFT);
+    }
+
+    @Override
+    public String toString() {
+        return "<buffer " + length + ">";
+    }
+}
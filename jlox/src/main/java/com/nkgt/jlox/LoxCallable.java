@@ -1,8 +1,26 @@
 package com.nkgt.jlox;
 
-import java.util.List;
-
 interface LoxCallable {
+    Object[] NO_ARGUMENTS = new Object[0];
+
     int arity();
-    Object call(Interpreter interpreter, List<Object> arguments);
+    Object call(Interpreter interpreter, Object[] arguments);
+
+    // Calls with up to three arguments skip the argument array. Callables
+    // that can take their arguments directly override these.
+    default Object call0(Interpreter interpreter) {
+        return call(interpreter, NO_ARGUMENTS);
+    }
+
+    default Object call1(Interpreter interpreter, Object first) {
+        return call(interpreter, new Object[] {first});
+    }
+
+    default Object call2(Interpreter interpreter, Object first, Object second) {
+        return call(interpreter, new Object[] {first, second});
+    }
+
+    default Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        return call(interpreter, new Object[] {first, second, third});
+    }
 }
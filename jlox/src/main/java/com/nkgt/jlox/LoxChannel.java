@@ -0,0 +1,44 @@
+package com.nkgt.jlox;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.SynchronousQueue;
+
+// A queue between tasks. With no capacity every send waits for a matching
+// receive; otherwise sends only wait while the channel is full. Handing a
+// value over a channel makes everything the sender did before visible to
+// the receiver.
+final class LoxChannel {
+    // Blocking queues don't take null, so nil travels as this.
+    private static final Object NIL = new Object();
+
+    private final BlockingQueue<Object> queue;
+
+    LoxChannel(int capacity) {
+        this.queue = capacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(capacity);
+    }
+
+    void send(Object value) {
+        try {
+            queue.put(value == null ? NIL : value);
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while sending on a channel.");
+        }
+    }
+
+    Object receive() {
+        try {
+            Object value = queue.take();
+            return value == NIL ? null : value;
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while receiving from a channel.");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<channel>";
+    }
+}
@@ -1,17 +1,18 @@
 package com.nkgt.jlox;
 
-import java.util.List;
 import java.util.Map;
 
 public class LoxClass implements LoxCallable {
     final String name;
     final LoxClass superclass;
     private final Map<String, LoxFunction> methods;
+    private final LoxFunction initializer;
 
     LoxClass(String name, LoxClass superclass, Map<String, LoxFunction> methods) {
         this.name = name;
         this.superclass = superclass;
         this.methods = methods;
+        this.initializer = findMethod("init");
     }
 
     LoxFunction findMethod(String name) {
@@ -27,20 +28,47 @@ public class LoxClass implements LoxCallable {
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        LoxInstance instance = new LoxInstance(this);
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        LoxInstance instance = instantiate(interpreter);
+        if(initializer != null) initializer.bind(instance).call(interpreter, arguments);
+        return instance;
+    }
 
-        LoxFunction initializer = findMethod("init");
-        if(initializer != null) {
-            initializer.bind(instance).call(interpreter, arguments);
-        }
+    @Override
+    public Object call0(Interpreter interpreter) {
+        LoxInstance instance = instantiate(interpreter);
+        if(initializer != null) initializer.bind(instance).call0(interpreter);
+        return instance;
+    }
 
+    @Override
+    public Object call1(Interpreter interpreter, Object first) {
+        LoxInstance instance = instantiate(interpreter);
+        if(initializer != null) initializer.bind(instance).call1(interpreter, first);
         return instance;
     }
 
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        LoxInstance instance = instantiate(interpreter);
+        if(initializer != null) initializer.bind(instance).call2(interpreter, first, second);
+        return instance;
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        LoxInstance instance = instantiate(interpreter);
+        if(initializer != null) initializer.bind(instance).call3(interpreter, first, second, third);
+        return instance;
+    }
+
+    private LoxInstance instantiate(Interpreter interpreter) {
+        interpreter.allocate(Budget.INSTANCE_BYTES);
+        return new LoxInstance(this);
+    }
+
     @Override
     public int arity() {
-        LoxFunction initializer = findMethod("init");
         if(initializer == null) return 0;
         return initializer.arity();
     }
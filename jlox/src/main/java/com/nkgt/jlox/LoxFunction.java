@@ -1,22 +1,33 @@
 package com.nkgt.jlox;
 
-import java.util.List;
-
 public class LoxFunction implements LoxCallable{
-    private final Stmt.Function declaration;
-    private final Environment closure;
+    final Stmt.Function declaration;
+    private final Cell[] upvalues;
+    private final LoxInstance receiver;
     private final boolean isInitializer;
 
-    LoxFunction(Stmt.Function declaration, Environment closure, boolean isInitializer) {
+    // Methods keep 'this' in the first slot, ahead of the parameters.
+    private final int firstParameter;
+
+    LoxFunction(Stmt.Function declaration, Cell[] upvalues, boolean isInitializer) {
+        this(declaration, upvalues, null, isInitializer);
+    }
+
+    private LoxFunction(
+            Stmt.Function declaration,
+            Cell[] upvalues,
+            LoxInstance receiver,
+            boolean isInitializer
+    ) {
         this.declaration = declaration;
-        this.closure = closure;
+        this.upvalues = upvalues;
+        this.receiver = receiver;
         this.isInitializer = isInitializer;
+        this.firstParameter = receiver == null ? 0 : 1;
     }
 
     LoxFunction bind(LoxInstance instance) {
-        Environment environment = new Environment(closure);
-        environment.define("this", instance);
-        return new LoxFunction(declaration, environment, isInitializer);
+        return new LoxFunction(declaration, upvalues, instance, isInitializer);
     }
 
     @Override
@@ -25,22 +36,58 @@ public class LoxFunction implements LoxCallable{
     }
 
     @Override
-    public Object call(Interpreter interpreter, List<Object> arguments) {
-        Environment environment = new Environment(closure);
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        Frame frame = newFrame(interpreter);
+        System.arraycopy(arguments, 0, frame.slots, firstParameter, arguments.length);
+        return execute(interpreter, frame);
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        return execute(interpreter, newFrame(interpreter));
+    }
 
-        for(int i = 0; i < declaration.params.size(); i++) {
-            environment.define(declaration.params.get(i).lexeme, arguments.get(i));
-        }
+    @Override
+    public Object call1(Interpreter interpreter, Object first) {
+        Frame frame = newFrame(interpreter);
+        frame.slots[firstParameter] = first;
+        return execute(interpreter, frame);
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        Frame frame = newFrame(interpreter);
+        frame.slots[firstParameter] = first;
+        frame.slots[firstParameter + 1] = second;
+        return execute(interpreter, frame);
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        Frame frame = newFrame(interpreter);
+        frame.slots[firstParameter] = first;
+        frame.slots[firstParameter + 1] = second;
+        frame.slots[firstParameter + 2] = third;
+        return execute(interpreter, frame);
+    }
 
-        try {
-            interpreter.executeBlock(declaration.body, environment);
-        } catch(Return returnValue) {
-            if(isInitializer) return closure.getAt(0, "this");
-            return returnValue.value;
+    private Frame newFrame(Interpreter interpreter) {
+        Frame frame = interpreter.acquireFrame(declaration.frameSize, upvalues);
+        if(receiver != null) frame.slots[0] = receiver;
+        return frame;
+    }
+
+    private Object execute(Interpreter interpreter, Frame frame) {
+        Object[] slots = frame.slots;
+        for(int slot : declaration.capturedSlots) {
+            slots[slot] = interpreter.newCell(slots[slot]);
         }
 
-        if(isInitializer) return closure.getAt(0, "this");
-        return null;
+        Object completion = interpreter.executeBlock(declaration.body, frame);
+        interpreter.releaseFrame(frame);
+
+        if(isInitializer) return receiver;
+        return completion == Interpreter.NORMAL ? null : completion;
     }
 
     @Override
@@ -1,19 +1,24 @@
 package com.nkgt.jlox;
 
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class LoxInstance {
+    // Fields can be set from several tasks at once, and a ConcurrentHashMap
+    // doesn't take null, so nil is stored as this.
+    private static final Object NIL = new Object();
+
     private LoxClass klass;
-    private final Map<String, Object> fields = new HashMap<>();
+    private final Map<String, Object> fields = new ConcurrentHashMap<>();
 
     LoxInstance(LoxClass klass) {
         this.klass = klass;
     }
 
     Object get(Token name) {
-        if(fields.containsKey(name.lexeme)) {
-            return fields.get(name.lexeme);
+        Object value = fields.get(name.lexeme);
+        if(value != null) {
+            return value == NIL ? null : value;
         }
 
         LoxFunction method = klass.findMethod(name.lexeme);
@@ -22,8 +27,9 @@ public class LoxInstance {
         throw new RuntimeError(name, "Undefined property '" + name.lexeme + "'.");
     }
 
-    void set(Token name, Object value) {
-        fields.put(name.lexeme, value);
+    // Whether the field is new.
+    boolean set(Token name, Object value) {
+        return fields.put(name.lexeme, value == null ? NIL : value) == null;
     }
 
     @Override
@@ -0,0 +1,146 @@
+package com.nkgt.jlox;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+// A hash map with open addressing and linear probing. Keys compare the way
+// '==' does, so strings match by content however they were built.
+final class LoxMap {
+    private static final Object NIL_KEY = new Object();
+    private static final Object DELETED = new Object();
+
+    private Object[] keys = new Object[8];
+    private Object[] values = new Object[8];
+    private int size = 0;
+    private int used = 0;
+
+    int size() {
+        return size;
+    }
+
+    Object get(Object key) {
+        int index = find(normalize(key));
+        return index < 0 ? null : values[index];
+    }
+
+    boolean containsKey(Object key) {
+        return find(normalize(key)) >= 0;
+    }
+
+    // Whether the key is new.
+    boolean put(Object key, Object value) {
+        key = normalize(key);
+
+        int index = find(key);
+        if(index >= 0) {
+            values[index] = value;
+            return false;
+        }
+
+        if((used + 1) * 3 > keys.length * 2) resize();
+
+        index = slot(key);
+        while(keys[index] != null && keys[index] != DELETED) {
+            index = (index + 1) & (keys.length - 1);
+        }
+
+        if(keys[index] == null) used++;
+        keys[index] = key;
+        values[index] = value;
+        size++;
+        return true;
+    }
+
+    Object remove(Object key) {
+        int index = find(normalize(key));
+        if(index < 0) return null;
+
+        Object value = values[index];
+        keys[index] = DELETED;
+        values[index] = null;
+        size--;
+        return value;
+    }
+
+    LoxArray keys() {
+        LoxArray result = new LoxArray(0);
+
+        for(Object key : keys) {
+            if(key == null || key == DELETED) continue;
+            result.push(key == NIL_KEY ? null : key);
+        }
+
+        return result;
+    }
+
+    private int find(Object key) {
+        int index = slot(key);
+
+        for(Object candidate = keys[index]; candidate != null; candidate = keys[index]) {
+            if(candidate != DELETED && candidate.equals(key)) return index;
+            index = (index + 1) & (keys.length - 1);
+        }
+
+        return -1;
+    }
+
+    private int slot(Object key) {
+        int hash = key.hashCode() * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & (keys.length - 1);
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+
+        int capacity = keys.length;
+        while((size + 1) * 3 > capacity) capacity *= 2;
+
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        size = 0;
+        used = 0;
+
+        for(int i = 0; i < oldKeys.length; i++) {
+            if(oldKeys[i] != null && oldKeys[i] != DELETED) put(oldKeys[i], oldValues[i]);
+        }
+    }
+
+    private static Object normalize(Object key) {
+        if(key == null) return NIL_KEY;
+        if(key instanceof Rope rope) return rope.toString();
+        return key;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        appendTo(builder, Collections.newSetFromMap(new IdentityHashMap<>()));
+        return builder.toString();
+    }
+
+    // Like LoxArray.appendTo, a map inside itself is printed as {...}.
+    void appendTo(StringBuilder builder, Set<Object> printing) {
+        if(!printing.add(this)) {
+            builder.append("{...}");
+            return;
+        }
+
+        builder.append("{");
+
+        boolean first = true;
+        for(int i = 0; i < keys.length; i++) {
+            if(keys[i] == null || keys[i] == DELETED) continue;
+            if(!first) builder.append(", ");
+
+            Interpreter.stringify(builder, keys[i] == NIL_KEY ? null : keys[i], printing);
+            builder.append(": ");
+            Interpreter.stringify(builder, values[i], printing);
+            first = false;
+        }
+
+        builder.append("}");
+        printing.remove(this);
+    }
+}
@@ -0,0 +1,47 @@
+package com.nkgt.jlox;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+// A function running on a virtual thread of its own, started by spawn().
+// Its result, or the error that stopped it, is handed over by await().
+final class LoxTask {
+    private final FutureTask<Object> future;
+
+    private LoxTask(FutureTask<Object> future) {
+        this.future = future;
+    }
+
+    static LoxTask start(Interpreter parent, LoxCallable function) {
+        FutureTask<Object> future = new FutureTask<>(() -> {
+            Interpreter interpreter = new Interpreter(parent, false);
+            try {
+                return function.call0(interpreter);
+            } finally {
+                interpreter.finish();
+            }
+        });
+
+        Thread.ofVirtual().name("lox-task").start(future);
+        return new LoxTask(future);
+    }
+
+    Object await() {
+        try {
+            return future.get();
+        } catch(InterruptedException error) {
+            Thread.currentThread().interrupt();
+            throw new NativeError("Interrupted while awaiting a task.");
+        } catch(ExecutionException error) {
+            // Errors keep the token they were raised at, inside the task.
+            if(error.getCause() instanceof RuntimeException cause) throw cause;
+            if(error.getCause() instanceof Error cause) throw cause;
+            throw new IllegalStateException(error.getCause());
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "<task>";
+    }
+}
@@ -0,0 +1,55 @@
+package com.nkgt.jlox;
+
+final class MathNatives {
+    private MathNatives() {}
+
+    @Native
+    static double abs(double x) {
+        return Math.abs(x);
+    }
+
+    @Native
+    static double floor(double x) {
+        return Math.floor(x);
+    }
+
+    @Native
+    static double ceil(double x) {
+        return Math.ceil(x);
+    }
+
+    @Native
+    static double sqrt(double x) {
+        return Math.sqrt(x);
+    }
+
+    @Native
+    static double pow(double base, double exponent) {
+        return Math.pow(base, exponent);
+    }
+
+    @Native
+    static double min(double a, double b) {
+        return Math.min(a, b);
+    }
+
+    @Native
+    static double max(double a, double b) {
+        return Math.max(a, b);
+    }
+
+    @Native
+    static double sin(double x) {
+        return Math.sin(x);
+    }
+
+    @Native
+    static double cos(double x) {
+        return Math.cos(x);
+    }
+
+    @Native
+    static double random() {
+        return Math.random();
+    }
+}
@@ -0,0 +1,17 @@
+package com.nkgt.jlox;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// Marks a static method of a natives module as a Lox global. Parameters may
+// be double, String, LoxArray, LoxMap, LoxCallable or Object, optionally
+// preceded by the Interpreter; the result may be double, boolean, void or
+// any reference.
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+@interface Native {
+    // Name of the global; defaults to the method name.
+    String value() default "";
+}
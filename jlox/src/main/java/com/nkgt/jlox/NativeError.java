@@ -0,0 +1,9 @@
+package com.nkgt.jlox;
+
+// Thrown by natives, which don't know where they were called from. The
+// interpreter turns it into a RuntimeError at the call site.
+public class NativeError extends RuntimeException {
+    NativeError(String message) {
+        super(message, null, false, false);
+    }
+}
@@ -0,0 +1,89 @@
+package com.nkgt.jlox;
+
+import java.lang.invoke.MethodHandle;
+
+class NativeFunction implements LoxCallable {
+    private final String name;
+    private final int arity;
+
+    // (Interpreter, Object...)Object with one Object per parameter, and the
+    // same taking the arguments as an array.
+    private final MethodHandle target;
+    private final MethodHandle spreader;
+
+    NativeFunction(String name, MethodHandle target) {
+        this.name = name;
+        this.arity = target.type().parameterCount() - 1;
+        this.target = target;
+        this.spreader = target.asSpreader(Object[].class, arity);
+    }
+
+    @Override
+    public int arity() {
+        return arity;
+    }
+
+    @Override
+    public Object call(Interpreter interpreter, Object[] arguments) {
+        try {
+            return (Object) spreader.invokeExact(interpreter, arguments);
+        } catch(Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call0(Interpreter interpreter) {
+        if(arity != 0) return call(interpreter, NO_ARGUMENTS);
+
+        try {
+            return (Object) target.invokeExact(interpreter);
+        } catch(Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call1(Interpreter interpreter, Object first) {
+        if(arity != 1) return call(interpreter, new Object[] {first});
+
+        try {
+            return (Object) target.invokeExact(interpreter, first);
+        } catch(Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call2(Interpreter interpreter, Object first, Object second) {
+        if(arity != 2) return call(interpreter, new Object[] {first, second});
+
+        try {
+            return (Object) target.invokeExact(interpreter, first, second);
+        } catch(Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    @Override
+    public Object call3(Interpreter interpreter, Object first, Object second, Object third) {
+        if(arity != 3) return call(interpreter, new Object[] {first, second, third});
+
+        try {
+            return (Object) target.invokeExact(interpreter, first, second, third);
+        } catch(Throwable error) {
+            throw rethrow(error);
+        }
+    }
+
+    private RuntimeException rethrow(Throwable error) {
+        if(error instanceof RuntimeException exception) return exception;
+        if(error instanceof Error fatal) throw fatal;
+        return new NativeError("Native function '" + name + "' failed: " + error.getMessage());
+    }
+
+    @Override
+    public String toString() {
+        return "<native fn>";
+    }
+}
@@ -0,0 +1,119 @@
+package com.nkgt.jlox;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+
+// Turns the @Native methods of a module class into globals. Each method is
+// adapted once into a handle taking plain Objects, with the argument checks
+// and boxing built in, so calling it involves no reflection.
+final class Natives {
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+    private static final Map<Class<?>, MethodHandle> CONVERSIONS;
+
+    static {
+        try {
+            CONVERSIONS = Map.of(
+                    double.class, conversion("toNumber", double.class),
+                    String.class, conversion("toText", String.class),
+                    LoxArray.class, conversion("toArray", LoxArray.class),
+                    LoxMap.class, conversion("toMap", LoxMap.class),
+                    LoxCallable.class, conversion("toCallable", LoxCallable.class)
+            );
+        } catch(ReflectiveOperationException error) {
+            throw new ExceptionInInitializerError(error);
+        }
+    }
+
+    private Natives() {}
+
+    static void define(Environment globals, Class<?>... modules) {
+        for(Class<?> module : modules) {
+            for(Method method : module.getDeclaredMethods()) {
+                Native annotation = method.getAnnotation(Native.class);
+                if(annotation == null) continue;
+
+                String name = annotation.value().isEmpty() ? method.getName() : annotation.value();
+                globals.define(name, new NativeFunction(name, adapt(method)));
+            }
+        }
+    }
+
+    private static MethodHandle adapt(Method method) {
+        if(!Modifier.isStatic(method.getModifiers())) {
+            throw new IllegalArgumentException("Native " + method + " must be static.");
+        }
+
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.unreflect(method);
+        } catch(IllegalAccessException error) {
+            throw new IllegalArgumentException("Native " + method + " is not accessible.", error);
+        }
+
+        MethodType type = handle.type();
+        if(type.parameterCount() == 0 || type.parameterType(0) != Interpreter.class) {
+            handle = MethodHandles.dropArguments(handle, 0, Interpreter.class);
+            type = handle.type();
+        }
+
+        for(int i = 1; i < type.parameterCount(); i++) {
+            Class<?> parameter = type.parameterType(i);
+            MethodHandle conversion = CONVERSIONS.get(parameter);
+
+            if(conversion != null) {
+                handle = MethodHandles.filterArguments(handle, i, conversion);
+            } else if(parameter != Object.class) {
+                throw new IllegalArgumentException(
+                        "Native " + method + " has an unsupported parameter type " + parameter + "."
+                );
+            }
+        }
+
+        Class<?> result = type.returnType();
+        if(result.isPrimitive() &&
+           result != double.class && result != boolean.class && result != void.class) {
+            throw new IllegalArgumentException(
+                    "Native " + method + " has an unsupported return type " + result + "."
+            );
+        }
+
+        int arity = type.parameterCount() - 1;
+        return handle.asType(
+                MethodType.genericMethodType(arity).insertParameterTypes(0, Interpreter.class)
+        );
+    }
+
+    private static MethodHandle conversion(String name, Class<?> type)
+            throws ReflectiveOperationException {
+        return LOOKUP.findStatic(Natives.class, name, MethodType.methodType(type, Object.class));
+    }
+
+    private static double toNumber(Object value) {
+        if(value instanceof Double number) return number;
+        throw new NativeError("Argument must be a number.");
+    }
+
+    private static String toText(Object value) {
+        if(value instanceof CharSequence text) return text.toString();
+        throw new NativeError("Argument must be a string.");
+    }
+
+    private static LoxArray toArray(Object value) {
+        if(value instanceof LoxArray array) return array;
+        throw new NativeError("Argument must be an array.");
+    }
+
+    private static LoxMap toMap(Object value) {
+        if(value instanceof LoxMap map) return map;
+        throw new NativeError("Argument must be a map.");
+    }
+
+    private static LoxCallable toCallable(Object value) {
+        if(value instanceof LoxCallable callable) return callable;
+        throw new NativeError("Argument must be a function.");
+    }
+}
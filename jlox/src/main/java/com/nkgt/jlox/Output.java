@@ -0,0 +1,108 @@
+package com.nkgt.jlox;
+
+import java.io.Closeable;
+import java.io.FileDescriptor;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Everything a script prints goes through here. Text is encoded straight
+// into a buffer that is written out when it fills up or at an explicit
+// flush: the end of a script, a REPL prompt or a runtime error. Parallel
+// tasks print through the same Output, so each call holds its lock.
+//
+// Like a PrintStream, it doesn't throw when writing fails, as it does once
+// the reader of a pipe such as '| head' has gone: the output is marked as
+// failed and everything printed from then on is dropped.
+class Output implements Closeable {
+    static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+    static final int MIN_BUFFER_SIZE = 64;
+
+    private static final String LINE_SEPARATOR = System.lineSeparator();
+
+    private final WritableByteChannel channel;
+    private final boolean ownsChannel;
+    private final CharsetEncoder encoder;
+    private final ByteBuffer buffer;
+    private boolean failed = false;
+
+    private Output(WritableByteChannel channel, boolean ownsChannel, int bufferSize) {
+        this.channel = channel;
+        this.ownsChannel = ownsChannel;
+        this.encoder = Charset.defaultCharset().newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    static Output stdout(int bufferSize) {
+        FileOutputStream stream = new FileOutputStream(FileDescriptor.out);
+        return new Output(Channels.newChannel(stream), false, bufferSize);
+    }
+
+    static Output file(Path path, int bufferSize) throws IOException {
+        FileChannel channel = FileChannel.open(
+                path,
+                StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE
+        );
+
+        return new Output(channel, true, bufferSize);
+    }
+
+    synchronized void print(String text) {
+        encode(CharBuffer.wrap(text));
+    }
+
+    synchronized void println(String text) {
+        print(text);
+        print(LINE_SEPARATOR);
+    }
+
+    synchronized void flush() {
+        buffer.flip();
+
+        try {
+            while(!failed && buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } catch(IOException error) {
+            failed = true;
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if(ownsChannel) channel.close();
+    }
+
+    private void encode(CharBuffer text) {
+        encoder.reset();
+
+        CoderResult result = encoder.encode(text, buffer, true);
+        while(result.isOverflow()) {
+            flush();
+            result = encoder.encode(text, buffer, true);
+        }
+
+        result = encoder.flush(buffer);
+        while(result.isOverflow()) {
+            flush();
+            result = encoder.flush(buffer);
+        }
+    }
+}
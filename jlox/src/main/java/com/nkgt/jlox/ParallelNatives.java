@@ -0,0 +1,166 @@
+package com.nkgt.jlox;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Map and reduce over an array on the common ForkJoinPool. Every chunk runs
+// in its own worker interpreter, so the only state the threads share is
+// what the function can reach: the globals and whatever its closure and
+// the array hold. Workers can read globals and captured variables but not
+// assign them. Instances, arrays and maps are shared as they are, with no
+// locking, so a function should only change the ones it makes itself.
+final class ParallelNatives {
+    // Chunks per worker thread, so a few slow elements don't leave the
+    // other threads idle.
+    private static final int CHUNKS_PER_THREAD = 8;
+
+    private ParallelNatives() {}
+
+    @Native
+    static LoxArray parallelMap(Interpreter interpreter, LoxCallable function, LoxArray array) {
+        checkArity(function, 1);
+
+        int length = array.length();
+        interpreter.allocate(Budget.ARRAY_BYTES + 2 * Budget.ELEMENT_BYTES * length);
+
+        Object[] elements = elements(array);
+        Object[] results = new Object[length];
+
+        run(interpreter, length, new Work() {
+            @Override
+            public Object fold(Interpreter worker, int start, int end) {
+                for(int i = start; i < end; i++) {
+                    results[i] = function.call1(worker, elements[i]);
+                }
+
+                return null;
+            }
+
+            @Override
+            public Object combine(Interpreter worker, Object left, Object right) {
+                return null;
+            }
+        });
+
+        LoxArray result = new LoxArray(length);
+        for(int i = 0; i < length; i++) {
+            result.set(i, results[i]);
+        }
+
+        return result;
+    }
+
+    // The function must be associative: chunks are folded separately, from
+    // their first element, and their results are folded together in order.
+    // The initial value is folded in once, in front of everything else.
+    @Native
+    static Object parallelReduce(
+            Interpreter interpreter,
+            LoxCallable function,
+            LoxArray array,
+            Object initial
+    ) {
+        checkArity(function, 2);
+
+        int length = array.length();
+        if(length == 0) return initial;
+
+        Object[] elements = elements(array);
+
+        Object total = run(interpreter, length, new Work() {
+            @Override
+            public Object fold(Interpreter worker, int start, int end) {
+                Object accumulator = elements[start];
+                for(int i = start + 1; i < end; i++) {
+                    accumulator = function.call2(worker, accumulator, elements[i]);
+                }
+
+                return accumulator;
+            }
+
+            @Override
+            public Object combine(Interpreter worker, Object left, Object right) {
+                return function.call2(worker, left, right);
+            }
+        });
+
+        return function.call2(interpreter, initial, total);
+    }
+
+    private static Object run(Interpreter interpreter, int length, Work work) {
+        int chunks = ForkJoinPool.getCommonPoolParallelism() * CHUNKS_PER_THREAD;
+        int chunkSize = Math.max(1, (length + chunks - 1) / chunks);
+
+        return ForkJoinPool.commonPool().invoke(new Chunk(interpreter, work, 0, length, chunkSize));
+    }
+
+    private static void checkArity(LoxCallable function, int arity) {
+        if(function.arity() != arity) {
+            throw new NativeError(
+                    "Expected a function of " + arity +
+                    (arity == 1 ? " argument" : " arguments") +
+                    " but got one of " + function.arity() + "."
+            );
+        }
+    }
+
+    // Taken up front, on the calling thread, so the workers never look
+    // into the array itself.
+    private static Object[] elements(LoxArray array) {
+        Object[] elements = new Object[array.length()];
+        for(int i = 0; i < elements.length; i++) {
+            elements[i] = array.get(i);
+        }
+
+        return elements;
+    }
+
+    private interface Work {
+        Object fold(Interpreter worker, int start, int end);
+
+        Object combine(Interpreter worker, Object left, Object right);
+    }
+
+    private static class Chunk extends RecursiveTask<Object> {
+        private final Interpreter parent;
+        private final Work work;
+        private final int start;
+        private final int end;
+        private final int chunkSize;
+
+        Chunk(Interpreter parent, Work work, int start, int end, int chunkSize) {
+            this.parent = parent;
+            this.work = work;
+            this.start = start;
+            this.end = end;
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        protected Object compute() {
+            if(end - start <= chunkSize) {
+                Interpreter worker = new Interpreter(parent, true);
+                try {
+                    return work.fold(worker, start, end);
+                } finally {
+                    worker.finish();
+                }
+            }
+
+            int middle = (start + end) >>> 1;
+            Chunk left = new Chunk(parent, work, start, middle, chunkSize);
+            Chunk right = new Chunk(parent, work, middle, end, chunkSize);
+
+            right.fork();
+            Object leftResult = left.compute();
+            Object rightResult = right.join();
+
+            Interpreter worker = new Interpreter(parent, true);
+            try {
+                return work.combine(worker, leftResult, rightResult);
+            } finally {
+                worker.finish();
+            }
+        }
+    }
+}
@@ -8,16 +8,53 @@ import static com.nkgt.jlox.TokenType.*;
 
 class Parser {
     private static class ParseError extends RuntimeException {}
-    private final List<Token> tokens;
+
+    // Binding power of each token as an infix or postfix operator, indexed
+    // by TokenType ordinal. Tokens that are neither are left at 0, below
+    // every level expression() is asked for, so they end the expression.
+    private static final int ASSIGNMENT = 1;
+    private static final int OR_LEVEL = 2;
+    private static final int AND_LEVEL = 3;
+    private static final int EQUALITY = 4;
+    private static final int COMPARISON = 5;
+    private static final int TERM = 6;
+    private static final int FACTOR = 7;
+    private static final int UNARY = 8;
+    private static final int CALL = 9;
+
+    private static final int[] PRECEDENCE = new int[TokenType.values().length];
+
+    static {
+        PRECEDENCE[EQUAL.ordinal()] = ASSIGNMENT;
+        PRECEDENCE[OR.ordinal()] = OR_LEVEL;
+        PRECEDENCE[AND.ordinal()] = AND_LEVEL;
+        PRECEDENCE[BANG_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[EQUAL_EQUAL.ordinal()] = EQUALITY;
+        PRECEDENCE[GREATER.ordinal()] = COMPARISON;
+        PRECEDENCE[GREATER_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS.ordinal()] = COMPARISON;
+        PRECEDENCE[LESS_EQUAL.ordinal()] = COMPARISON;
+        PRECEDENCE[MINUS.ordinal()] = TERM;
+        PRECEDENCE[PLUS.ordinal()] = TERM;
+        PRECEDENCE[SLASH.ordinal()] = FACTOR;
+        PRECEDENCE[STAR.ordinal()] = FACTOR;
+        PRECEDENCE[LEFT_PAREN.ordinal()] = CALL;
+        PRECEDENCE[DOT.ordinal()] = CALL;
+        PRECEDENCE[LEFT_BRACKET.ordinal()] = CALL;
+    }
+
+    // Tokens are only turned into Token objects when the AST keeps them or
+    // an error reports them.
+    private final TokenBuffer tokens;
     private int current = 0;
 
-    Parser(List<Token> tokens) {
+    Parser(TokenBuffer tokens) {
         this.tokens = tokens;
     }
 
     List<Stmt> parse() {
         List<Stmt> statements = new ArrayList<>();
-        while(tokens.get(current).type != EOF) {
+        while(peek() != EOF) {
             statements.add(declaration());
         }
 
@@ -25,11 +62,17 @@ class Parser {
     }
 
     private Stmt declaration() {
+        int line = tokens.line(current);
+
         try {
-            if(match(CLASS)) return classDeclaration();
-            if(match(FUN)) return function("function");
-            if(match(VAR)) return varDeclaration();
-            return statement();
+            Stmt stmt;
+            if(match(CLASS)) stmt = classDeclaration();
+            else if(match(FUN)) stmt = function("function");
+            else if(match(VAR)) stmt = varDeclaration();
+            else stmt = statement();
+
+            stmt.line = line;
+            return stmt;
         } catch (ParseError error) {
             synchronize();
             return null;
@@ -37,18 +80,18 @@ class Parser {
     }
 
     private Stmt classDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect class name.");
+        Token name = consumeToken(IDENTIFIER, "Expect class name.");
 
         Expr.Variable superclass = null;
         if(match(LESS)) {
             consume(IDENTIFIER, "Expect superclass name.");
-            superclass = new Expr.Variable(tokens.get(current - 1));
+            superclass = new Expr.Variable(previous());
         }
 
         consume(LEFT_BRACE, "Expect '{' before class body.");
 
         List<Stmt.Function> methods = new ArrayList<>();
-        while(!check(RIGHT_BRACE) && !(tokens.get(current).type == EOF)) {
+        while(!check(RIGHT_BRACE) && !(peek() == EOF)) {
             methods.add(function("method"));
         }
 
@@ -58,7 +101,7 @@ class Parser {
     }
 
     private Stmt varDeclaration() {
-        Token name = consume(IDENTIFIER, "Expect variable name.");
+        Token name = consumeToken(IDENTIFIER, "Expect variable name.");
 
         Expr initializer = null;
         if(match(EQUAL)) initializer = expression();
@@ -68,17 +111,23 @@ class Parser {
     }
 
     private Stmt statement() {
-        if(match(FOR)) return forStatement();
-        if(match(IF)) return ifStatement();
-        if(match(PRINT)) return printStatement();
-        if(match(RETURN)) return returnStatement();
-        if(match(WHILE)) return whileStatement();
-        if(match(LEFT_BRACE)) return new Stmt.Block(block());
-
-        return expressionStatement();
+        int line = tokens.line(current);
+
+        Stmt stmt;
+        if(match(FOR)) stmt = forStatement();
+        else if(match(IF)) stmt = ifStatement();
+        else if(match(PRINT)) stmt = printStatement();
+        else if(match(RETURN)) stmt = returnStatement();
+        else if(match(WHILE)) stmt = whileStatement();
+        else if(match(LEFT_BRACE)) stmt = new Stmt.Block(block());
+        else stmt = expressionStatement();
+
+        stmt.line = line;
+        return stmt;
     }
 
     private Stmt forStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'for'.");
 
         Stmt initializer;
@@ -90,6 +139,14 @@ class Parser {
             initializer = expressionStatement();
         }
 
+        // The statements the loop is rewritten into all belong to the line
+        // of the 'for'. Only the While is traced: it is reported each time
+        // the condition is tested, which is how often the line runs.
+        if(initializer != null) {
+            initializer.line = keyword.line;
+            initializer.desugared = true;
+        }
+
         Expr condition = null;
         if(!check(SEMICOLON)) {
             condition = expression();
@@ -107,19 +164,22 @@ class Parser {
         Stmt body = statement();
 
         if(increment != null) {
-            body = new Stmt.Block(
-                    Arrays.asList(
-                            body,
-                            new Stmt.Expression(increment)
-                    )
-            );
+            Stmt step = new Stmt.Expression(increment);
+            step.line = keyword.line;
+            step.desugared = true;
+
+            body = new Stmt.Block(Arrays.asList(body, step));
+            body.line = keyword.line;
+            body.desugared = true;
         }
 
         if(condition == null) condition = new Expr.Literal(true);
-        body = new Stmt.While(condition, body);
+        body = new Stmt.While(keyword, condition, body);
+        body.line = keyword.line;
 
         if(initializer != null) {
             body = new Stmt.Block(Arrays.asList(initializer, body));
+            body.desugared = true;
         }
 
         return body;
@@ -147,7 +207,7 @@ class Parser {
     }
 
     private Stmt returnStatement() {
-        Token keyword = tokens.get(current - 1);
+        Token keyword = previous();
 
         Expr value = null;
         if(!check(SEMICOLON)) {
@@ -159,12 +219,13 @@ class Parser {
     }
 
     private Stmt whileStatement() {
+        Token keyword = previous();
         consume(LEFT_PAREN, "Expect '(' after 'while'.");
         Expr condition = expression();
         consume(RIGHT_PAREN, "Expect ')' after condition.");
         Stmt body = statement();
 
-        return new Stmt.While(condition, body);
+        return new Stmt.While(keyword, condition, body);
     }
 
     private Stmt expressionStatement() {
@@ -174,7 +235,7 @@ class Parser {
     }
 
     private Stmt.Function function(String kind) {
-        Token name = consume(IDENTIFIER, "Expect " + kind + " name.");
+        Token name = consumeToken(IDENTIFIER, "Expect " + kind + " name.");
         consume(LEFT_PAREN, "Expect '(' after " + kind + " name.");
 
         List<Token> parameters = new ArrayList<>();
@@ -182,10 +243,10 @@ class Parser {
         if(!check(RIGHT_PAREN)) {
             do {
                 if (parameters.size() >= 255) {
-                    error(tokens.get(current), "Can't have more than 255 parameters.");
+                    error(tokens.token(current), "Can't have more than 255 parameters.");
                 }
 
-                parameters.add(consume(IDENTIFIER, "Expect parameter name."));
+                parameters.add(consumeToken(IDENTIFIER, "Expect parameter name."));
             } while(match(COMMA));
         }
 
@@ -193,130 +254,101 @@ class Parser {
         consume(LEFT_BRACE, "Expect '{' before " + kind + " body.");
 
         List<Stmt> body = block();
-        return new Stmt.Function(name, parameters, body);
-    }
 
-    private Expr expression() {
-        return assignment();
+        Stmt.Function function = new Stmt.Function(name, parameters, body);
+        function.line = name.line;
+        return function;
     }
 
-    private Expr assignment() {
-       Expr expr = or();
-
-       if(match(EQUAL)) {
-           Token equals = tokens.get(current - 1);
-           Expr value = assignment();
-
-           if(expr instanceof Expr.Variable) {
-               Token name = ((Expr.Variable)expr).name;
-               return new Expr.Assign(name, value);
-           } else if(expr instanceof Expr.Get get) {
-               return new Expr.Set(get.object, get.name, value);
-           }
-
-           error(equals, "Invalid assignment target.");
-       }
-
-       return expr;
-    }
-
-    private Expr or() {
-        Expr expr = and();
-
-        while(match(OR)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = and();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr and() {
-        Expr expr = equality();
-
-        while(match(AND)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = equality();
-            expr = new Expr.Logical(expr, operator, right);
-        }
-
-        return expr;
-    }
-
-    private Expr equality() {
-        Expr expr = comparison();
-
-        while(match(BANG_EQUAL, EQUAL_EQUAL)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = comparison();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
+    private Expr expression() {
+        return expression(ASSIGNMENT);
     }
 
-    private Expr comparison() {
-        Expr expr = term();
-
-        while(match(GREATER, GREATER_EQUAL, LESS, LESS_EQUAL)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = term();
-            expr = new Expr.Binary(expr, operator, right);
-        }
-
-        return expr;
-    }
+    // Parses a prefix expression, then keeps extending it with the infix and
+    // postfix operators that bind at least as tightly as the given level.
+    private Expr expression(int precedence) {
+        Expr expr = prefix();
 
-    private Expr term() {
-        Expr expr = factor();
+        for(;;) {
+            int infix = PRECEDENCE[peek().ordinal()];
+            if(infix < precedence) return expr;
 
-        while(match(MINUS, PLUS)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = factor();
-            expr = new Expr.Binary(expr, operator, right);
+            advance();
+            expr = infix(expr, previous(), infix);
         }
-
-        return expr;
     }
 
-    private Expr factor() {
-        Expr expr = unary();
-
-        while(match(SLASH, STAR)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = unary();
-            expr = new Expr.Binary(expr, operator, right);
+    private Expr prefix() {
+        TokenType type = peek();
+        if(type == EOF) throw error(tokens.token(current), "Expect expression.");
+        current++;
+
+        switch(type) {
+            case FALSE: return new Expr.Literal(false);
+            case TRUE: return new Expr.Literal(true);
+            case NIL: return new Expr.Literal(null);
+            case NUMBER:
+            case STRING:
+                return new Expr.Literal(tokens.literal(current - 1));
+            case SUPER: {
+                Token keyword = previous();
+                consume(DOT, "Expect '.' after 'super'.");
+                Token method = consumeToken(IDENTIFIER, "Expect superclass method name");
+                return new Expr.Super(keyword, method);
+            }
+            case THIS: return new Expr.This(previous());
+            case IDENTIFIER: return new Expr.Variable(previous());
+            case LEFT_PAREN: {
+                Expr expr = expression();
+                consume(RIGHT_PAREN, "Expect ')' after expression");
+                return new Expr.Grouping(expr);
+            }
+            case BANG:
+            case MINUS: {
+                Token operator = previous();
+                return new Expr.Unary(operator, expression(UNARY));
+            }
+            default:
+                current--;
+                throw error(tokens.token(current), "Expect expression.");
         }
-
-        return expr;
     }
 
-    private Expr unary() {
-        if(match(BANG, MINUS)) {
-            Token operator = tokens.get(current - 1);
-            Expr right = unary();
-            return new Expr.Unary(operator, right);
-        }
+    private Expr infix(Expr left, Token operator, int precedence) {
+        switch(operator.type) {
+            case EQUAL: {
+                // Right-associative, and the target is checked only once
+                // the value has been parsed.
+                Expr value = expression(ASSIGNMENT);
 
-        return call();
-    }
+                if(left instanceof Expr.Variable variable) {
+                    return new Expr.Assign(variable.name, value);
+                } else if(left instanceof Expr.Get get) {
+                    return new Expr.Set(get.object, get.name, value);
+                } else if(left instanceof Expr.Index index) {
+                    return new Expr.SetIndex(index.object, index.bracket, index.index, value);
+                }
 
-    private Expr call() {
-        Expr expr = primary();
-
-        while(true) {
-            if (match(LEFT_PAREN)) {
-                expr = finishCall(expr);
-            } else if (match(DOT)){
-                Token name = consume(IDENTIFIER, "Expect property name after '.'.");
-                expr = new Expr.Get(expr, name);
-            } else {
-                break;
+                error(operator, "Invalid assignment target.");
+                return left;
+            }
+            case OR:
+            case AND:
+                return new Expr.Logical(left, operator, expression(precedence + 1));
+            case LEFT_PAREN:
+                return finishCall(left);
+            case DOT: {
+                Token name = consumeToken(IDENTIFIER, "Expect property name after '.'.");
+                return new Expr.Get(left, name);
+            }
+            case LEFT_BRACKET: {
+                Expr index = expression();
+                Token bracket = consumeToken(RIGHT_BRACKET, "Expect ']' after index.");
+                return new Expr.Index(left, bracket, index);
             }
+            default:
+                return new Expr.Binary(left, operator, expression(precedence + 1));
         }
-
-        return expr;
     }
 
     private Expr finishCall(Expr callee) {
@@ -325,52 +357,21 @@ class Parser {
         if(!check(RIGHT_PAREN)) {
             do {
                 if(arguments.size() >= 255) {
-                    error(tokens.get(current), "Can't have more than 255 arguments.");
+                    error(tokens.token(current), "Can't have more than 255 arguments.");
                 }
 
                 arguments.add(expression());
             } while(match(COMMA));
         }
 
-        Token paren = consume(RIGHT_PAREN, "Expect ')' after arguments.");
+        Token paren = consumeToken(RIGHT_PAREN, "Expect ')' after arguments.");
         return new Expr.Call(callee, paren, arguments);
     }
 
-    private Expr primary() {
-        if(match(FALSE)) return new Expr.Literal(false);
-        if(match(TRUE)) return new Expr.Literal(true);
-        if(match(NIL)) return new Expr.Literal(null);
-
-        if(match(NUMBER, STRING)) {
-            return new Expr.Literal(tokens.get(current - 1).literal);
-        }
-
-        if(match(SUPER)) {
-            Token keyword = tokens.get(current - 1);
-            consume(DOT, "Expect '.' after 'super'.");
-            Token method = consume(IDENTIFIER, "Expect superclass method name");
-            return new Expr.Super(keyword, method);
-        }
-
-        if(match(THIS)) return new Expr.This(tokens.get(current - 1));
-
-        if(match(IDENTIFIER)) {
-            return new Expr.Variable((tokens.get(current - 1)));
-        }
-
-        if(match(LEFT_PAREN)) {
-            Expr expr = expression();
-            consume(RIGHT_PAREN, "Expect ')' after expression");
-            return new Expr.Grouping(expr);
-        }
-
-        throw error(tokens.get(current), "Expect expression.");
-    }
-
     private List<Stmt> block() {
         List<Stmt> statements = new ArrayList<>();
 
-        while(!check(RIGHT_BRACE) && tokens.get(current).type != EOF) {
+        while(!check(RIGHT_BRACE) && peek() != EOF) {
             statements.add(declaration());
         }
 
@@ -378,30 +379,38 @@ class Parser {
         return statements;
     }
 
-    private boolean match(TokenType... types) {
-        for(TokenType type : types) {
-            if(check(type)) {
-                advance();
-                return true;
-            }
-        }
+    private boolean match(TokenType type) {
+        if(!check(type)) return false;
 
-        return false;
+        advance();
+        return true;
     }
 
     private boolean check(TokenType type) {
-        if(tokens.get(current).type == EOF) return false;
-        return tokens.get(current).type == type;
+        TokenType next = peek();
+        return next != EOF && next == type;
+    }
+
+    private TokenType peek() {
+        return tokens.type(current);
+    }
+
+    private Token previous() {
+        return tokens.token(current - 1);
+    }
+
+    private void advance() {
+        if(peek() != EOF) current++;
     }
 
-    private Token advance() {
-        if(tokens.get(current).type != EOF) current++;
-        return tokens.get(current - 1);
+    private void consume(TokenType type, String message) {
+        if(!check(type)) throw error(tokens.token(current), message);
+        advance();
     }
 
-    private Token consume(TokenType type, String message) {
-        if(check(type)) return advance();
-        throw error(tokens.get(current), message);
+    private Token consumeToken(TokenType type, String message) {
+        consume(type, message);
+        return previous();
     }
 
     private ParseError error(Token token, String message) {
@@ -412,10 +421,10 @@ class Parser {
     private void synchronize() {
         advance();
 
-        while(tokens.get(current).type != EOF) {
-            if(tokens.get(current - 1).type == SEMICOLON) return;
+        while(peek() != EOF) {
+            if(tokens.type(current - 1) == SEMICOLON) return;
 
-            switch(tokens.get(current).type) {
+            switch(peek()) {
                 case CLASS:
                 case FUN:
                 case VAR:
@@ -1,19 +1,17 @@
 package com.nkgt.jlox;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Stack;
 
 public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
-    private final Interpreter interpreter;
-    private final Stack<Map<String, Boolean>> scopes = new Stack<>();
+    private final Stack<Map<String, Local>> scopes = new Stack<>();
+    private final Environment globals;
     private FunctionType currentFunction = FunctionType.NONE;
     private ClassType currentClass = ClassType.NONE;
-
-    Resolver(Interpreter interpreter) {
-        this.interpreter = interpreter;
-    }
+    private FrameLayout layout = new FrameLayout(null);
 
     private enum FunctionType {
         NONE,
@@ -28,12 +26,111 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         SUBCLASS
     }
 
+    // Slot allocation for the frame of the function being resolved. Slots are
+    // handed out in declaration order and given back when their scope ends,
+    // so sibling blocks and loop bodies share them.
+    private static class FrameLayout {
+        final FrameLayout enclosing;
+        final int depth;
+        int next = 0;
+        int size = 0;
+
+        // Where each upvalue comes from when the closure is created: a slot
+        // of the enclosing frame, or -1 - i for the enclosing function's own
+        // upvalue i.
+        final List<Integer> upvalues = new ArrayList<>();
+        final Map<Local, Integer> upvalueIndices = new HashMap<>();
+
+        FrameLayout(FrameLayout enclosing) {
+            this.enclosing = enclosing;
+            this.depth = enclosing == null ? 0 : enclosing.depth + 1;
+        }
+
+        int allocate() {
+            int slot = next++;
+            size = Math.max(size, next);
+            return slot;
+        }
+
+        int upvalue(Local local) {
+            Integer index = upvalueIndices.get(local);
+            if(index != null) return index;
+
+            local.capture();
+
+            if(local.depth == enclosing.depth) {
+                upvalues.add(local.slot);
+            } else {
+                upvalues.add(-1 - enclosing.upvalue(local));
+            }
+
+            upvalueIndices.put(local, upvalues.size() - 1);
+            return upvalues.size() - 1;
+        }
+    }
+
+    // A closure copies the value of a local it captures, unless the local
+    // can change after the closure is made: it is assigned somewhere, or it
+    // is a function or class captured by its own body. Only those locals
+    // live in a Cell that the frame and its closures share.
+    private static class Local {
+        final int depth;
+        final int slot;
+        boolean defined = false;
+        boolean initialized = false;
+        boolean captured = false;
+        boolean assigned = false;
+        boolean boxed = false;
+        private final List<Runnable> onBox = new ArrayList<>();
+
+        Local(int depth, int slot) {
+            this.depth = depth;
+            this.slot = slot;
+        }
+
+        // Uses resolved before the local was boxed still have to learn that
+        // the slot holds a Cell.
+        void use(Runnable markBoxed) {
+            if(boxed) {
+                markBoxed.run();
+            } else {
+                onBox.add(markBoxed);
+            }
+        }
+
+        void capture() {
+            captured = true;
+            if(assigned || !initialized) box();
+        }
+
+        void assign() {
+            assigned = true;
+            if(captured) box();
+        }
+
+        private void box() {
+            if(boxed) return;
+
+            boxed = true;
+            onBox.forEach(Runnable::run);
+            onBox.clear();
+        }
+    }
+
+    Resolver(Environment globals) {
+        this.globals = globals;
+    }
+
     void resolve(List<Stmt> statements) {
         for(Stmt statement : statements) {
             resolve(statement);
         }
     }
 
+    int frameSize() {
+        return layout.size;
+    }
+
     @Override
     public Void visitBlockStmt(Stmt.Block stmt) {
         beginScope();
@@ -47,9 +144,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         ClassType enclosingClass = currentClass;
         currentClass = ClassType.CLASS;
 
-        declare(stmt.name);
+        Local local = declare(stmt.name);
         define(stmt.name);
 
+        if(local != null) {
+            stmt.slot = local.slot;
+            local.use(() -> stmt.captured = true);
+        }
+
         if(stmt.superclass != null) {
             if(stmt.name.lexeme.equals(stmt.superclass.name.lexeme)) {
                 Lox.error(stmt.superclass.name, "A class can't inherit from itself.");
@@ -59,12 +161,9 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolve(stmt.superclass);
 
             beginScope();
-            scopes.peek().put("super", true);
+            stmt.superSlot = declareHidden("super").slot;
         }
 
-        beginScope();
-        scopes.peek().put("this", true);
-
         for(Stmt.Function method : stmt.methods) {
             FunctionType declaration = FunctionType.METHOD;
             if(method.name.lexeme.equals("init")) {
@@ -74,8 +173,8 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             resolveFunction(method, declaration);
         }
 
-        endScope();
         if(stmt.superclass != null) endScope();
+        if(local != null) local.initialized = true;
         currentClass = enclosingClass;
 
         return null;
@@ -89,7 +188,7 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
     @Override
     public Void visitVarStmt(Stmt.Var stmt) {
-        declare(stmt.name);
+        Local local = declare(stmt.name);
 
         if(stmt.initializer != null) {
             resolve(stmt.initializer);
@@ -97,31 +196,72 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
 
         define(stmt.name);
 
+        if(local != null) {
+            stmt.slot = local.slot;
+            local.initialized = true;
+            local.use(() -> stmt.captured = true);
+        }
+
         return null;
     }
 
     @Override
     public Void visitVariableExpr(Expr.Variable expr) {
-        if(!scopes.isEmpty() && scopes.peek().get(expr.name.lexeme) == Boolean.FALSE) {
-            Lox.error(expr.name, "Can't read local variable in its own initializer");
+        if(!scopes.isEmpty()) {
+            Local local = scopes.peek().get(expr.name.lexeme);
+
+            if(local != null && !local.defined) {
+                Lox.error(expr.name, "Can't read local variable in its own initializer");
+            }
+        }
+
+        Local local = resolveLocal(expr.name.lexeme);
+        if(local == null) {
+            expr.global = globals.index(expr.name.lexeme);
+        } else if(local.depth == layout.depth) {
+            expr.slot = local.slot;
+            local.use(() -> expr.captured = true);
+        } else {
+            expr.upvalue = layout.upvalue(local);
         }
 
-        resolveLocal(expr, expr.name);
         return null;
     }
 
     @Override
     public Void visitAssignExpr(Expr.Assign expr) {
         resolve(expr.value);
-        resolveLocal(expr, expr.name);
+
+        Local local = resolveLocal(expr.name.lexeme);
+        if(local == null) {
+            expr.global = globals.index(expr.name.lexeme);
+            return null;
+        }
+
+        local.assign();
+
+        if(local.depth == layout.depth) {
+            expr.slot = local.slot;
+            local.use(() -> expr.captured = true);
+        } else {
+            expr.upvalue = layout.upvalue(local);
+        }
+
         return null;
     }
 
     @Override
     public Void visitFunctionStmt(Stmt.Function stmt) {
-        declare(stmt.name);
+        Local local = declare(stmt.name);
         define(stmt.name);
+
+        if(local != null) {
+            stmt.slot = local.slot;
+            local.use(() -> stmt.captured = true);
+        }
+
         resolveFunction(stmt, FunctionType.FUNCTION);
+        if(local != null) local.initialized = true;
 
         return null;
     }
@@ -196,6 +336,13 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitIndexExpr(Expr.Index expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        return null;
+    }
+
     @Override
     public Void visitLiteralExpr(Expr.Literal expr) {
         return null;
@@ -215,6 +362,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
         return null;
     }
 
+    @Override
+    public Void visitSetIndexExpr(Expr.SetIndex expr) {
+        resolve(expr.object);
+        resolve(expr.index);
+        resolve(expr.value);
+        return null;
+    }
+
     @Override
     public Void visitSuperExpr(Expr.Super expr) {
         if(currentClass == ClassType.NONE) {
@@ -226,7 +381,21 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             );
         }
 
-        resolveLocal(expr, expr.keyword);
+        // 'super' is declared around the methods, so a method always sees it
+        // as an upvalue.
+        Local superclass = resolveLocal("super");
+        if(superclass != null) {
+            expr.upvalue = layout.upvalue(superclass);
+        }
+
+        Local object = resolveLocal("this");
+        if(object != null && object.depth == layout.depth) {
+            expr.thisSlot = object.slot;
+            object.use(() -> expr.thisCaptured = true);
+        } else if(object != null) {
+            expr.thisUpvalue = layout.upvalue(object);
+        }
+
         return null;
     }
 
@@ -236,7 +405,14 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
             Lox.error(expr.keyword, "Can't user 'this' outside of a class");
         }
 
-        resolveLocal(expr, expr.keyword);
+        Local local = resolveLocal("this");
+        if(local != null && local.depth == layout.depth) {
+            expr.slot = local.slot;
+            local.use(() -> expr.captured = true);
+        } else if(local != null) {
+            expr.upvalue = layout.upvalue(local);
+        }
+
         return null;
     }
 
@@ -259,46 +435,76 @@ public class Resolver implements Expr.Visitor<Void>, Stmt.Visitor<Void> {
     }
 
     private void endScope() {
-        scopes.pop();
+        layout.next -= scopes.pop().size();
     }
 
-    private void declare(Token name) {
-        if(scopes.isEmpty()) return;
-        Map<String, Boolean> scope = scopes.peek();
+    private Local declare(Token name) {
+        if(scopes.isEmpty()) return null;
+        Map<String, Local> scope = scopes.peek();
 
         if(scope.containsKey(name.lexeme)) {
             Lox.error(name, "Already a variable with this name in this scope.");
         }
 
-        scope.put(name.lexeme, false);
+        Local local = new Local(layout.depth, layout.allocate());
+        scope.put(name.lexeme, local);
+        return local;
+    }
+
+    private Local declareHidden(String name) {
+        Local local = new Local(layout.depth, layout.allocate());
+        local.defined = true;
+        local.initialized = true;
+        scopes.peek().put(name, local);
+        return local;
     }
 
     private void define(Token name) {
         if(scopes.isEmpty()) return;
-        scopes.peek().put(name.lexeme, true);
+        scopes.peek().get(name.lexeme).defined = true;
     }
 
-    private void resolveLocal(Expr expr, Token name) {
+    private Local resolveLocal(String name) {
         for(int i = scopes.size() - 1; i >= 0; i--) {
-            if(scopes.get(i).containsKey(name.lexeme)) {
-                interpreter.resolve(expr, scopes.size() - 1 - i);
-                return;
-            }
+            Local local = scopes.get(i).get(name);
+            if(local != null) return local;
         }
+
+        return null;
     }
 
     private void resolveFunction(Stmt.Function function, FunctionType type) {
         FunctionType enclosingFunction = currentFunction;
+        FrameLayout enclosingLayout = layout;
         currentFunction = type;
+        layout = new FrameLayout(enclosingLayout);
         beginScope();
 
+        List<Local> parameters = new ArrayList<>();
+        if(type == FunctionType.METHOD || type == FunctionType.INITIALIZER) {
+            parameters.add(declareHidden("this"));
+        }
+
         for(Token param : function.params) {
-            declare(param);
+            Local local = declare(param);
+            local.initialized = true;
+            parameters.add(local);
             define(param);
         }
 
         resolve(function.body);
         endScope();
+
+        function.frameSize = layout.size;
+        function.capturedSlots = parameters.stream()
+                .filter(parameter -> parameter.boxed)
+                .mapToInt(parameter -> parameter.slot)
+                .toArray();
+        function.upvalues = layout.upvalues.stream()
+                .mapToInt(Integer::intValue)
+                .toArray();
+
+        layout = enclosingLayout;
         currentFunction = enclosingFunction;
     }
 }
@@ -0,0 +1,103 @@
+package com.nkgt.jlox;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+// A string built by '+'. Concatenation only links the two halves; the
+// characters are copied once, the first time the whole string is needed.
+final class Rope implements CharSequence {
+    // Below this the copy is cheaper than keeping the tree around.
+    private static final int FLAT_LIMIT = 64;
+
+    // The longest string the JVM can hold whatever its characters: one
+    // that isn't Latin-1 takes two bytes a character in a single array.
+    static final int MAX_LENGTH = (Integer.MAX_VALUE >> 1) - 8;
+
+    private final int length;
+    private CharSequence left;
+    private CharSequence right;
+    private String flat;
+
+    private Rope(CharSequence left, CharSequence right) {
+        this.length = left.length() + right.length();
+        this.left = left;
+        this.right = right;
+    }
+
+    // The caller checks the result fits in MAX_LENGTH.
+    static CharSequence concat(CharSequence left, CharSequence right) {
+        if(left.length() == 0) return right;
+        if(right.length() == 0) return left;
+
+        long length = (long) left.length() + right.length();
+        if(length > MAX_LENGTH) {
+            throw new IllegalArgumentException("String of " + length + " characters is too long.");
+        }
+
+        if(length <= FLAT_LIMIT) {
+            return left.toString().concat(right.toString());
+        }
+
+        return new Rope(left, right);
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return toString().charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        return toString().substring(start, end);
+    }
+
+    @Override
+    public String toString() {
+        String text = flat;
+        if(text != null) return text;
+
+        return flatten();
+    }
+
+    // Strings built in a loop make very deep trees, so the walk uses its
+    // own stack, filling the buffer from the end, right half first.
+    private synchronized String flatten() {
+        if(flat != null) return flat;
+
+        char[] chars = new char[length];
+        int end = length;
+
+        Deque<CharSequence> pending = new ArrayDeque<>();
+        pending.push(this);
+
+        while(!pending.isEmpty()) {
+            CharSequence part = pending.pop();
+
+            if(part instanceof Rope rope && rope.flat == null) {
+                CharSequence left = rope.left;
+                CharSequence right = rope.right;
+
+                if(left != null && right != null) {
+                    pending.push(left);
+                    pending.push(right);
+                    continue;
+                }
+            }
+
+            String text = part.toString();
+            end -= text.length();
+            text.getChars(0, text.length(), chars, end);
+        }
+
+        flat = new String(chars);
+        left = null;
+        right = null;
+
+        return flat;
+    }
+}
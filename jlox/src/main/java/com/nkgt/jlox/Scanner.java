@@ -1,51 +1,54 @@
 package com.nkgt.jlox;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
-
 import static com.nkgt.jlox.TokenType.*;
 
 class Scanner {
+    // Character classes for ASCII, so the hot loops test a table entry
+    // instead of a chain of comparisons.
+    private static final byte DIGIT = 1;
+    private static final byte ALPHA = 2;
+    private static final byte[] CLASSES = new byte[128];
+
+    static {
+        for(char c = '0'; c <= '9'; c++) CLASSES[c] = DIGIT;
+        for(char c = 'a'; c <= 'z'; c++) CLASSES[c] = ALPHA;
+        for(char c = 'A'; c <= 'Z'; c++) CLASSES[c] = ALPHA;
+        CLASSES['_'] = ALPHA;
+    }
+
+    // Integers up to 2^53 and powers of ten up to 10^22 are exact doubles.
+    private static final long MAX_EXACT = 1L << 53;
+    private static final double[] POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+        1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
     private final String source;
-    private final List<Token> tokens = new ArrayList<>();
+    private final int length;
+    private final TokenBuffer tokens;
     private int start = 0;
     private int current = 0;
     private int line = 1;
-    private static final Map<String, TokenType> keywords;
 
-    static {
-        keywords = new HashMap<>();
-        keywords.put("and", AND);
-        keywords.put("class", CLASS);
-        keywords.put("else", ELSE);
-        keywords.put("false", FALSE);
-        keywords.put("for", FOR);
-        keywords.put("fun", FUN);
-        keywords.put("if", IF);
-        keywords.put("nil", NIL);
-        keywords.put("or", OR);
-        keywords.put("print", PRINT);
-        keywords.put("return", RETURN);
-        keywords.put("super", SUPER);
-        keywords.put("this", THIS);
-        keywords.put("true", TRUE);
-        keywords.put("var", VAR);
-        keywords.put("while", WHILE);
-    }
+    // Every distinct identifier, so each name is copied out of the source
+    // once however often it appears. Open addressing over the characters,
+    // which avoids making a substring just to look one up.
+    private String[] names = new String[1024];
+    private int nameCount = 0;
 
     Scanner(String source) {
         this.source = source;
+        this.length = source.length();
+        this.tokens = new TokenBuffer(source);
     }
     
-    List<Token> scanTokens() {
-        while(!(current >= source.length())) {
+    TokenBuffer scanTokens() {
+        while(!(current >= length)) {
             start = current;
             scanToken();
         }
 
-        tokens.add(new Token(EOF, "", null, line));
+        tokens.add(EOF, length, 0, null, line);
         return tokens;
     }
 
@@ -57,6 +60,8 @@ class Scanner {
             case ')': addToken(RIGHT_PAREN, null); break;
             case '{': addToken(LEFT_BRACE, null); break;
             case '}': addToken(RIGHT_BRACE, null); break;
+            case '[': addToken(LEFT_BRACKET, null); break;
+            case ']': addToken(RIGHT_BRACKET, null); break;
             case ',': addToken(COMMA, null); break;
             case '.': addToken(DOT, null); break;
             case '-': addToken(MINUS, null); break;
@@ -77,7 +82,7 @@ class Scanner {
                 break;
             case '/':
                 if(match('/')) {
-                    while(peek() != '\n' && !(current >= source.length())) current++;
+                    while(peek() != '\n' && !(current >= length)) current++;
                 } else {
                     addToken(SLASH, null);
                 }
@@ -105,12 +110,11 @@ class Scanner {
     }
     
     private void addToken(TokenType type, Object literal) {
-        String text = source.substring(start, current);
-        tokens.add(new Token(type, text, literal, line));
+        tokens.add(type, start, current - start, literal, line);
     }
     
     private boolean match(char expected) {
-        if(current >= source.length()) return false;
+        if(current >= length) return false;
         if(source.charAt(current) != expected) return false;
 
         current++;
@@ -118,36 +122,34 @@ class Scanner {
     }
 
     private char peek() {
-        if(current >= source.length()) return '\0';
+        if(current >= length) return '\0';
         return source.charAt(current);
     }
     
     private char peekNext() {
-        if(current + 1 >= source.length()) return '\0';
+        if(current + 1 >= length) return '\0';
         return source.charAt(current + 1);
     }
     
-    private boolean isDigit(char c) {
-        return c >= '0' && c <= '9';
+    private static boolean isDigit(char c) {
+        return c < 128 && CLASSES[c] == DIGIT;
     }
 
-    private boolean isAlpha(char c) {
-        return (c >= 'a' && c <= 'z') ||
-               (c >= 'A' && c <= 'Z') ||
-                c == '_';
+    private static boolean isAlpha(char c) {
+        return c < 128 && CLASSES[c] == ALPHA;
     }
 
-    private boolean isAlphaNumeric(char c) {
-        return isAlpha(c) || isDigit(c);
+    private static boolean isAlphaNumeric(char c) {
+        return c < 128 && CLASSES[c] != 0;
     }
     
     private void string() {
-        while(peek() != '"' && !(current >= source.length())) {
+        while(peek() != '"' && !(current >= length)) {
             if(peek() == '\n') line++;
             current++;
         }
         
-        if(current >= source.length()) {
+        if(current >= length) {
             Lox.error(line, "Unterminated string.");
             return;
         }
@@ -160,23 +162,119 @@ class Scanner {
     }
 
     private void number() {
-        while(isDigit(peek())) current++;
+        // Collects the digits as an integer and counts those after the
+        // point. While the integer fits in a double's 53 bits and the
+        // divisor is an exact power of ten, one division gives the
+        // correctly rounded result.
+        long mantissa = source.charAt(start) - '0';
+        int digits = 1;
+        int decimals = 0;
+
+        while(current < length && isDigit(source.charAt(current))) {
+            mantissa = mantissa * 10 + (source.charAt(current++) - '0');
+            digits++;
+        }
 
         if(peek() == '.' && isDigit(peekNext())) {
             current++;
-            while(isDigit(peek())) current++;
+
+            while(current < length && isDigit(source.charAt(current))) {
+                mantissa = mantissa * 10 + (source.charAt(current++) - '0');
+                digits++;
+                decimals++;
+            }
         }
-        
-        addToken(NUMBER, Double.parseDouble(source.substring(start, current)));
+
+        double value;
+        if(digits <= 18 && mantissa <= MAX_EXACT && decimals < POWERS_OF_TEN.length) {
+            value = mantissa / POWERS_OF_TEN[decimals];
+        } else {
+            value = Double.parseDouble(source.substring(start, current));
+        }
+
+        addToken(NUMBER, value);
     }
 
     private void identifier() {
-        while(isAlphaNumeric(peek())) current++;
+        while(current < length && isAlphaNumeric(source.charAt(current))) current++;
 
-        String text = source.substring(start, current);
-        TokenType type = keywords.get(text);
-        if(type == null) type = IDENTIFIER;
+        TokenType type = keyword(start, current - start);
+        addToken(type, type == IDENTIFIER ? name(start, current) : null);
+    }
 
-        addToken(type, null);
+    private TokenType keyword(int start, int length) {
+        switch(source.charAt(start)) {
+            case 'a': return keyword(start, length, "and", AND);
+            case 'c': return keyword(start, length, "class", CLASS);
+            case 'e': return keyword(start, length, "else", ELSE);
+            case 'f':
+                if(length > 1) {
+                    switch(source.charAt(start + 1)) {
+                        case 'a': return keyword(start, length, "false", FALSE);
+                        case 'o': return keyword(start, length, "for", FOR);
+                        case 'u': return keyword(start, length, "fun", FUN);
+                    }
+                }
+                break;
+            case 'i': return keyword(start, length, "if", IF);
+            case 'n': return keyword(start, length, "nil", NIL);
+            case 'o': return keyword(start, length, "or", OR);
+            case 'p': return keyword(start, length, "print", PRINT);
+            case 'r': return keyword(start, length, "return", RETURN);
+            case 's': return keyword(start, length, "super", SUPER);
+            case 't':
+                if(length > 1) {
+                    switch(source.charAt(start + 1)) {
+                        case 'h': return keyword(start, length, "this", THIS);
+                        case 'r': return keyword(start, length, "true", TRUE);
+                    }
+                }
+                break;
+            case 'v': return keyword(start, length, "var", VAR);
+            case 'w': return keyword(start, length, "while", WHILE);
+        }
+
+        return IDENTIFIER;
+    }
+
+    private TokenType keyword(int start, int length, String keyword, TokenType type) {
+        if(length == keyword.length() && source.startsWith(keyword, start)) return type;
+        return IDENTIFIER;
+    }
+
+    private String name(int start, int end) {
+        int hash = 0;
+        for(int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+
+        int mask = names.length - 1;
+        int index = (hash ^ (hash >>> 16)) & mask;
+
+        for(String name = names[index]; name != null; name = names[index]) {
+            if(name.length() == end - start && source.startsWith(name, start)) return name;
+            index = (index + 1) & mask;
+        }
+
+        String name = source.substring(start, end);
+        names[index] = name;
+
+        if(++nameCount * 2 > names.length) rehash();
+        return name;
+    }
+
+    private void rehash() {
+        String[] old = names;
+        names = new String[old.length * 2];
+        int mask = names.length - 1;
+
+        for(String name : old) {
+            if(name == null) continue;
+
+            int hash = name.hashCode();
+            int index = (hash ^ (hash >>> 16)) & mask;
+            while(names[index] != null) index = (index + 1) & mask;
+            names[index] = name;
+        }
     }
 }
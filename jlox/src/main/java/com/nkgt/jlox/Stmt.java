@@ -2,7 +2,26 @@ package com.nkgt.jlox;
 
 import java.util.List;
 
-abstract class Stmt {
+abstract sealed class Stmt {
+    static final int BLOCK = 0;
+    static final int CLASS = 1;
+    static final int EXPRESSION = 2;
+    static final int FUNCTION = 3;
+    static final int IF = 4;
+    static final int PRINT = 5;
+    static final int RETURN = 6;
+    static final int VAR = 7;
+    static final int WHILE = 8;
+    static final int TRACED = 9;
+
+    int kind;
+    int line;
+    boolean desugared;
+
+    Stmt(int kind) {
+        this.kind = kind;
+    }
+
     interface Visitor<R> {
         R visitBlockStmt(Block stmt);
         R visitClassStmt(Class stmt);
@@ -17,8 +36,9 @@ abstract class Stmt {
 
     abstract<R> R accept(Visitor<R> visitor);
 
-    static class Block extends Stmt {
+    static final class Block extends Stmt {
         Block(List<Stmt> statements) {
+            super(BLOCK);
             this.statements = statements;
         }
 
@@ -30,8 +50,9 @@ abstract class Stmt {
         final List<Stmt> statements;
     }
 
-    static class Class extends Stmt {
+    static final class Class extends Stmt {
         Class(Token name, Expr.Variable superclass, List<Stmt.Function> methods) {
+            super(CLASS);
             this.name = name;
             this.superclass = superclass;
             this.methods = methods;
@@ -45,10 +66,15 @@ abstract class Stmt {
         final Token name;
         final Expr.Variable superclass;
         final List<Stmt.Function> methods;
+
+        int slot = -1;
+        boolean captured;
+        int superSlot;
     }
 
-    static class Expression extends Stmt {
+    static final class Expression extends Stmt {
         Expression(Expr expression) {
+            super(EXPRESSION);
             this.expression = expression;
         }
 
@@ -60,8 +86,9 @@ abstract class Stmt {
         final Expr expression;
     }
 
-    static class Function extends Stmt {
+    static final class Function extends Stmt {
         Function(Token name, List<Token> params, List<Stmt> body) {
+            super(FUNCTION);
             this.name = name;
             this.params = params;
             this.body = body;
@@ -75,10 +102,17 @@ abstract class Stmt {
         final Token name;
         final List<Token> params;
         final List<Stmt> body;
+
+        int slot = -1;
+        boolean captured;
+        int frameSize;
+        int[] capturedSlots;
+        int[] upvalues;
     }
 
-    static class If extends Stmt {
+    static final class If extends Stmt {
         If(Expr condition, Stmt thenBranch, Stmt elseBranch) {
+            super(IF);
             this.condition = condition;
             this.thenBranch = thenBranch;
             this.elseBranch = elseBranch;
@@ -94,8 +128,9 @@ abstract class Stmt {
         final Stmt elseBranch;
     }
 
-    static class Print extends Stmt {
+    static final class Print extends Stmt {
         Print(Expr expression) {
+            super(PRINT);
             this.expression = expression;
         }
 
@@ -107,8 +142,9 @@ abstract class Stmt {
         final Expr expression;
     }
 
-    static class Return extends Stmt {
+    static final class Return extends Stmt {
         Return(Token keyword, Expr value) {
+            super(RETURN);
             this.keyword = keyword;
             this.value = value;
         }
@@ -122,8 +158,9 @@ abstract class Stmt {
         final Expr value;
     }
 
-    static class Var extends Stmt {
+    static final class Var extends Stmt {
         Var(Token name, Expr initializer) {
+            super(VAR);
             this.name = name;
             this.initializer = initializer;
         }
@@ -135,10 +172,15 @@ abstract class Stmt {
 
         final Token name;
         final Expr initializer;
+
+        int slot = -1;
+        boolean captured;
     }
 
-    static class While extends Stmt {
-        While(Expr condition, Stmt body) {
+    static final class While extends Stmt {
+        While(Token keyword, Expr condition, Stmt body) {
+            super(WHILE);
+            this.keyword = keyword;
             this.condition = condition;
             this.body = body;
         }
@@ -148,6 +190,7 @@ abstract class Stmt {
             return visitor.visitWhileStmt(this);
         }
 
+        final Token keyword;
         final Expr condition;
         final Stmt body;
     }
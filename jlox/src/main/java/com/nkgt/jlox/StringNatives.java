@@ -0,0 +1,53 @@
+package com.nkgt.jlox;
+
+final class StringNatives {
+    private StringNatives() {}
+
+    @Native
+    static String substring(Interpreter interpreter, String text, double start, double end) {
+        if(start != (int) start || end != (int) end) {
+            throw new NativeError("Indices must be integers.");
+        }
+
+        if(start < 0 || end > text.length() || start > end) {
+            throw new NativeError("Substring range out of bounds.");
+        }
+
+        interpreter.allocate(Budget.stringBytes((int) end - (int) start));
+        return text.substring((int) start, (int) end);
+    }
+
+    @Native
+    static double indexOf(String text, String part) {
+        return text.indexOf(part);
+    }
+
+    @Native
+    static String upper(Interpreter interpreter, String text) {
+        interpreter.allocate(Budget.stringBytes(text.length()));
+        return text.toUpperCase();
+    }
+
+    @Native
+    static String lower(Interpreter interpreter, String text) {
+        interpreter.allocate(Budget.stringBytes(text.length()));
+        return text.toLowerCase();
+    }
+
+    @Native
+    static String str(Interpreter interpreter, Object value) {
+        String text = Interpreter.stringify(value);
+        interpreter.allocate(Budget.stringBytes(text.length()));
+        return text;
+    }
+
+    // nil when the text isn't a number.
+    @Native
+    static Object num(String text) {
+        try {
+            return Double.parseDouble(text.trim());
+        } catch(NumberFormatException error) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,10 @@
+package com.nkgt.jlox;
+
+final class SystemNatives {
+    private SystemNatives() {}
+
+    @Native
+    static double clock() {
+        return (double)System.currentTimeMillis() / 1000;
+    }
+}
@@ -0,0 +1,44 @@
+package com.nkgt.jlox;
+
+final class TaskNatives {
+    private TaskNatives() {}
+
+    @Native
+    static LoxTask spawn(Interpreter interpreter, LoxCallable function) {
+        if(function.arity() != 0) {
+            throw new NativeError("Can only spawn a function of no arguments.");
+        }
+
+        return LoxTask.start(interpreter, function);
+    }
+
+    @Native
+    static Object await(Object task) {
+        if(task instanceof LoxTask loxTask) return loxTask.await();
+        throw new NativeError("Argument must be a task.");
+    }
+
+    @Native("Channel")
+    static LoxChannel newChannel(double capacity) {
+        if(capacity < 0 || capacity != (int) capacity) {
+            throw new NativeError("Channel capacity must be a non-negative integer.");
+        }
+
+        return new LoxChannel((int) capacity);
+    }
+
+    @Native
+    static void send(Object channel, Object value) {
+        if(!(channel instanceof LoxChannel loxChannel)) {
+            throw new NativeError("Argument must be a channel.");
+        }
+
+        loxChannel.send(value);
+    }
+
+    @Native
+    static Object receive(Object channel) {
+        if(channel instanceof LoxChannel loxChannel) return loxChannel.receive();
+        throw new NativeError("Argument must be a channel.");
+    }
+}
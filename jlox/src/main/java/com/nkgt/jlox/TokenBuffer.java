@@ -0,0 +1,74 @@
+package com.nkgt.jlox;
+
+import java.util.Arrays;
+
+// The scanner's output, one entry per token spread over parallel arrays
+// rather than a Token object each. A token's text stays in the source
+// until something asks for it.
+final class TokenBuffer {
+    private static final TokenType[] TYPES = TokenType.values();
+    private static final byte IDENTIFIER = (byte) TokenType.IDENTIFIER.ordinal();
+
+    private final String source;
+    private byte[] types;
+    private int[] starts;
+    private int[] lengths;
+    private int[] lines;
+
+    // Strings and numbers have their value here and identifiers their name,
+    // shared by every occurrence. Everything else has null.
+    private Object[] literals;
+    private int size = 0;
+
+    TokenBuffer(String source) {
+        this.source = source;
+
+        // Typical code averages a token every four or five characters, so
+        // sizing for that up front saves most of the copying as it grows.
+        int capacity = Math.max(256, source.length() / 4);
+        this.types = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+        this.lines = new int[capacity];
+        this.literals = new Object[capacity];
+    }
+
+    void add(TokenType type, int start, int length, Object literal, int line) {
+        if(size == types.length) {
+            int capacity = size * 2;
+            types = Arrays.copyOf(types, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            literals = Arrays.copyOf(literals, capacity);
+        }
+
+        types[size] = (byte) type.ordinal();
+        starts[size] = start;
+        lengths[size] = length;
+        lines[size] = line;
+        literals[size] = literal;
+        size++;
+    }
+
+    TokenType type(int index) {
+        return TYPES[types[index]];
+    }
+
+    String lexeme(int index) {
+        if(types[index] == IDENTIFIER) return (String) literals[index];
+        return source.substring(starts[index], starts[index] + lengths[index]);
+    }
+
+    Object literal(int index) {
+        return types[index] == IDENTIFIER ? null : literals[index];
+    }
+
+    int line(int index) {
+        return lines[index];
+    }
+
+    Token token(int index) {
+        return new Token(type(index), lexeme(index), literal(index), lines[index]);
+    }
+}
@@ -0,0 +1,40 @@
+package com.nkgt.jlox;
+
+import java.io.PrintStream;
+
+// The tracer behind --trace. Writes a line to standard error for every
+// statement, call, return and assignment, tagged with its source line.
+class TraceLog implements Tracer {
+    private final PrintStream out;
+    private final ASTPrinter printer = new ASTPrinter();
+
+    TraceLog(PrintStream out) {
+        this.out = out;
+    }
+
+    @Override
+    public synchronized void statement(Stmt stmt) {
+        out.println("[line " + stmt.line + "] " + stmt.getClass().getSimpleName());
+    }
+
+    @Override
+    public synchronized void callEntered(Expr.Call call) {
+        out.println("[line " + call.paren.line + "] call " + printer.print(call.callee));
+    }
+
+    @Override
+    public synchronized void callExited(Expr.Call call, Object result) {
+        out.println(
+                "[line " + call.paren.line + "] return " + Interpreter.stringify(result) +
+                " from " + printer.print(call.callee)
+        );
+    }
+
+    @Override
+    public synchronized void assigned(Expr.Assign assign, Object value) {
+        out.println(
+                "[line " + assign.name.line + "] " + assign.name.lexeme +
+                " = " + Interpreter.stringify(value)
+        );
+    }
+}
@@ -0,0 +1,23 @@
+package com.nkgt.jlox;
+
+// Told what an Interpreter is doing while it is attached, for stepping,
+// tracing and breakpoints: a tool can do its work, or block until the
+// user says to carry on, before the method returns. Tasks and parallel
+// chunks report to the same Tracer from their own threads.
+interface Tracer {
+    // Once for every statement of the code being traced, when it is
+    // loaded, whether or not it ever runs.
+    default void loaded(Stmt stmt) {}
+
+    // Before the statement runs, and for a while loop, before each test of
+    // its condition. Statements carry their source line.
+    default void statement(Stmt stmt) {}
+
+    // Around a call. A call that fails with a runtime error never exits.
+    default void callEntered(Expr.Call call) {}
+
+    default void callExited(Expr.Call call, Object result) {}
+
+    // After a variable has been given a new value by an assignment.
+    default void assigned(Expr.Assign assign, Object value) {}
+}